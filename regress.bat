@@ -0,0 +1,2 @@
+javac src/*.java
+java -classpath ./src RegressionRunner %*
\ No newline at end of file
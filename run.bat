@@ -1,2 +1,2 @@
 javac src/*.java
-java -classpath ./src Assignment
+java -classpath ./src Assignment %*
@@ -1,41 +1,110 @@
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
 import java.util.Objects;
-import java.util.Scanner;
-import java.util.Stack;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Assignment
 {
-    /** A shared {@code stdin} scanner for the system. */
-    static final Scanner scanner = new Scanner(System.in);
+    /** The commands available on a follower, which only read the ensembles. */
+    private static final Set<String> READ_ONLY_COMMANDS = Set.of("s", "se", "sa", "rp", "ex", "x");
 
-    /** The mapping of {@link Ensemble} with its ID. */
-    private static final Map<String, Ensemble> ensembleMap = new HashMap<>();
+    /** The commands, so that the ones entered are dispatched without copying the input. */
+    private static final String[] COMMANDS = {"c", "s", "a", "m", "bm", "d", "t", "se", "st", "sa", "rp", "cn", "ex", "w", "u",
+            "r", "l", "h", "x"};
 
-    /** The undo stack. */
-    private static final Stack<Command> undoStack = new Stack<>();
-    /** The redo stack. */
-    private static final Stack<Command> redoStack = new Stack<>();
+    /** The {@code stdin} reader of the instance, replaced for each request in the HTTP mode. */
+    ConsoleReader reader;
+    /** The {@code stdout} of the instance. */
+    PrintStream out;
+    /** The {@code stderr} of the instance. */
+    PrintStream err;
+
+    /** The store of {@link Ensemble}s. */
+    private final EnsembleStore ensembleStore;
+
+    /** The undo/redo histories. */
+    private final Histories histories;
+
+    /** The listeners to the changes made by the commands. */
+    private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
 
     /** A collection of {@link Command} factory methods. */
-    private static final CommandFactories commandFactories = new CommandFactories(ensembleMap, undoStack, redoStack);
+    private final CommandFactories commandFactories;
+
+    /** The past versions of the ensembles. */
+    private final EnsembleVersions ensembleVersions;
+
+    /** Whether the current command has made any change. */
+    private boolean isChanged = false;
+
+    /** The failure of a listener to persist a change made by the current command, {@code null} if none. */
+    private UncheckedIOException publishFailure = null;
 
     /** The ID of the currently active {@link Ensemble}. {@code null} if no ensemble has been created yet. */
-    private static String activeEnsembleId = null;
+    private String activeEnsembleId = null;
+
+    /**
+     * Held while a command runs, so that a snapshot for a replication follower sees no command half done. On a follower,
+     * it is the lock the changes from the leader are applied under instead.
+     */
+    private Lock commandLock = new ReentrantLock();
+
+    /** Whether the console is running, until the exit command. */
+    private boolean isRunning = true;
+
+    /** The replication of the ensembles from a leader, {@code null} unless this instance is a follower. */
+    private ReplicationFollower follower = null;
+
+    /**
+     * Creates an instance of the system. Instances share no state, so that many of them may run side by side.
+     *
+     * @param ensembleStore    The store of the ensembles.
+     * @param ensembleRegistry The registry of the ensemble types.
+     * @param histories        The undo/redo histories.
+     * @param reader           The reader of the console input.
+     * @param out              The console output.
+     * @param err              The console error output.
+     */
+    Assignment(EnsembleStore ensembleStore, EnsembleRegistry ensembleRegistry, Histories histories, ConsoleReader reader,
+               PrintStream out, PrintStream err)
+    {
+        this.ensembleStore = ensembleStore;
+        this.histories = histories;
+        this.reader = reader;
+        this.out = out;
+        this.err = err;
+
+        var changeSubscriptions = new ChangeSubscriptions();
+        changeListeners.add(ensembleStore);
+        changeListeners.add(changeSubscriptions);
+        changeListeners.add(histories);
+        ensembleVersions = new EnsembleVersions(ensembleStore, ensembleRegistry);
+        changeListeners.add(ensembleVersions);
+        commandFactories = new CommandFactories(this, ensembleStore, ensembleRegistry, ensembleVersions, histories,
+                this::publish, new ChangeWatcher(changeSubscriptions, out));
+    }
 
     /**
      * Updates the active ensemble on which commands perform operations.
      *
      * @param ensembleId The ID of an ensemble.
      */
-    static void setActiveEnsemble(String ensembleId)
+    void setActiveEnsemble(String ensembleId)
     {
         // Print a message when the active ensemble was changed
         if (!Objects.requireNonNull(ensembleId).equals(activeEnsembleId))
         {
             activeEnsembleId = ensembleId;
-            System.out.printf("The current ensemble is changed to %s (ID: %s).%n",
-                    ensembleMap.get(activeEnsembleId).getName(), activeEnsembleId);
+            out.printf("The current ensemble is changed to %s (ID: %s).%n",
+                    ensembleStore.get(activeEnsembleId).getName(), activeEnsembleId);
         }
     }
 
@@ -44,88 +113,543 @@ public class Assignment
      *
      * @param ensemble The ensemble.
      */
-    static void setActiveEnsemble(Ensemble ensemble)
+    void setActiveEnsemble(Ensemble ensemble)
     {
         setActiveEnsemble(ensemble.getEnsembleID());
     }
 
-    public static void main(String[] args)
+    /**
+     * The ID of the active ensemble, {@code null} if none.
+     */
+    String getActiveEnsembleId()
+    {
+        return activeEnsembleId;
+    }
+
+    /**
+     * Adds a listener to the changes made by the commands.
+     *
+     * @param listener The listener.
+     */
+    void addChangeListener(ChangeListener listener)
+    {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Publishes a change made by a command to all the listeners.
+     *
+     * @param change The change.
+     */
+    private void publish(Change change)
     {
-        //noinspection InfiniteLoopStatement
-        while (true)
+        isChanged = true;
+        for (var listener : changeListeners)
         {
-            System.out.println("Music Ensembles Management System (MEMS)");
-            System.out.println("c = create ensemble, s = set current ensemble, a = add musician, m = modify musician's instrument,\nd = delete musician, se = show ensemble, sa = display all ensembles, cn = change ensemble's name,\nu = undo, r = redo, l = list undo/redo, x = exit system");
+            try
+            {
+                listener.changed(change);
+            }
+            catch (UncheckedIOException ex)
+            {
+                // The change is made already, so it still goes to the other listeners, to be reported after the command
+                publishFailure = ex;
+            }
+        }
+    }
 
-            // Print only when an active ensemble was selected
-            if (Objects.nonNull(activeEnsembleId))
+    /**
+     * Tells all the listeners that the changes made by the current command are complete.
+     */
+    private void commit()
+    {
+        isChanged = false;
+        var timestamp = System.currentTimeMillis();
+        for (var listener : changeListeners)
+        {
+            try
             {
-                System.out.printf("The current ensemble is %s (ID: %s)%n", ensembleMap.get(activeEnsembleId).getName(), activeEnsembleId);
+                listener.committed(timestamp);
             }
+            catch (UncheckedIOException ex)
+            {
+                publishFailure = ex;
+            }
+        }
+    }
+
+    /**
+     * Makes the instance a read-only follower, only serving the commands not changing the ensembles, the changes from
+     * the leader being applied between them.
+     *
+     * @param follower The replication of the ensembles from the leader.
+     */
+    void follow(ReplicationFollower follower)
+    {
+        this.follower = follower;
+        commandLock = follower.getLock();
+    }
+
+    /**
+     * Stops the console after the current command.
+     */
+    void exit()
+    {
+        isRunning = false;
+    }
 
-            System.out.print("Enter command [c/s/a/m/d/se/sa/cn/u/r/l/x]: ");
-            var command = switch (scanner.nextLine().trim().toLowerCase())
+    /**
+     * Creates and executes a command, pushing it to the undo stack when requested.
+     *
+     * @param input The command entered, e.g. {@code "c"}.
+     */
+    void execute(String input)
+    {
+        // No copy is made of a command read by the console, as it is already trimmed and in lower case
+        input = input.trim().toLowerCase();
+        if (Objects.nonNull(follower) && !READ_ONLY_COMMANDS.contains(input))
+        {
+            err.println("Command is not available on a follower!");
+            return;
+        }
+
+        commandLock.lock();
+        try
+        {
+            dispatch(input);
+        }
+        finally
+        {
+            commandLock.unlock();
+        }
+    }
+
+    /**
+     * Creates and executes a command, with the command lock held.
+     */
+    private void dispatch(String input)
+    {
+        var command = switch (input)
+        {
+            case "c" -> commandFactories.createCreateEnsembleCommand();
+            case "s" -> commandFactories.createSetCurrentEnsembleCommand();
+            case "a" -> commandFactories.createAddMusicianCommand(activeEnsembleId);
+            case "m" -> commandFactories.createModifyMusicianInstrumentCommand(activeEnsembleId);
+            case "bm" -> commandFactories.createBulkModifyMusicianInstrumentCommand(activeEnsembleId);
+            case "d" -> commandFactories.createDeleteMusicianCommand(activeEnsembleId);
+            case "t" -> commandFactories.createTransferMusiciansCommand(activeEnsembleId);
+            case "se" -> commandFactories.getShowEnsembleCommand();
+            case "st" -> commandFactories.createShowEnsembleAtCommand(activeEnsembleId);
+            case "sa" -> commandFactories.getDisplayAllEnsemblesCommand();
+            case "rp" -> commandFactories.createReportCommand();
+            case "cn" -> commandFactories.createChangeEnsembleNameCommand(activeEnsembleId);
+            case "ex" -> commandFactories.createExportEnsemblesCommand(activeEnsembleId);
+            case "w" -> commandFactories.createWatchCommand(activeEnsembleId);
+            case "u" -> commandFactories.getUndoCommand();
+            case "r" -> commandFactories.getRedoCommand();
+            case "l" -> commandFactories.getListUndoRedoCommand();
+            case "h" -> commandFactories.createShowHistoryLogCommand();
+            case "x" -> commandFactories.createExitCommand();
+            default ->
             {
-                case "c" -> commandFactories.createCreateEnsembleCommand();
-                case "s" -> commandFactories.createSetCurrentEnsembleCommand();
-                case "a" -> commandFactories.createAddMusicianCommand(activeEnsembleId);
-                case "m" -> commandFactories.createModifyMusicianInstrumentCommand(activeEnsembleId);
-                case "d" -> commandFactories.createDeleteMusicianCommand(activeEnsembleId);
-                case "se" -> commandFactories.createShowEnsembleCommand(activeEnsembleId);
-                case "sa" -> commandFactories.createDisplayAllEnsemblesCommand();
-                case "cn" -> commandFactories.createChangeEnsembleNameCommand(activeEnsembleId);
-                case "u" -> commandFactories.createUndoCommand();
-                case "r" -> commandFactories.createRedoCommand();
-                case "l" -> commandFactories.createListUndoRedoCommand();
-                case "x" -> commandFactories.createExitCommand();
-                default ->
+                err.println("Invalid command!");
+                yield null;
+            }
+        };
+
+        if (Objects.nonNull(command) && command.execute())
+        {
+            histories.record(command);
+        }
+        if (isChanged) { commit(); }
+
+        if (Objects.nonNull(publishFailure))
+        {
+            err.printf("%s: %s!%n", publishFailure.getMessage(), publishFailure.getCause().getMessage());
+            publishFailure = null;
+        }
+    }
+
+    /**
+     * Runs the console until the exit command or the end of the input.
+     */
+    void run()
+    {
+        try
+        {
+            while (true)
+            {
+                out.println("Music Ensembles Management System (MEMS)");
+                out.println("c = create ensemble, s = set current ensemble, a = add musician, m = modify musician's instrument,\nbm = bulk modify musicians' instruments, d = delete musician, t = transfer musicians,\nse = show ensemble, sa = display all ensembles, cn = change ensemble's name, st = show ensemble at a version/time,\nrp = report all ensembles, ex = export ensembles, w = watch changes, u = undo, r = redo, l = list undo/redo,\nh = show history log, x = exit system");
+
+                if (Objects.nonNull(follower)) { out.printf("Replication: %s%n", follower.getStatus()); }
+
+                // On a follower, the active ensemble may have been removed by the leader meanwhile
+                var activeEnsemble = Objects.nonNull(activeEnsembleId) ? ensembleStore.get(activeEnsembleId) : null;
+                if (Objects.isNull(activeEnsemble)) { activeEnsembleId = null; }
+
+                // Print only when an active ensemble was selected
+                if (Objects.nonNull(activeEnsemble))
                 {
-                    System.err.println("Invalid command!");
-                    yield null;
+                    out.print("The current ensemble is ");
+                    out.print(activeEnsemble.getName());
+                    out.print(" (ID: ");
+                    out.print(activeEnsembleId);
+                    out.println(')');
                 }
+
+                out.print("Enter command [c/s/a/m/bm/d/t/se/st/sa/rp/cn/ex/w/u/r/l/h/x]: ");
+                execute(reader.nextLine(COMMANDS));
+                if (!isRunning) { break; }
+
+                out.println();
+                out.println();
+            }
+        }
+        catch (NoSuchElementException ex)
+        {
+            // End of the input
+        }
+    }
+
+    /**
+     * Loads the registry of the ensemble types, exiting if it fails.
+     *
+     * @param options The command line options.
+     */
+    private static EnsembleRegistry loadEnsembleRegistry(Options options)
+    {
+        var path = Path.of(options.get("ensemble-types", "ensembles.properties"));
+        try
+        {
+            return EnsembleRegistry.load(path);
+        }
+        catch (IOException | IllegalArgumentException ex)
+        {
+            System.err.printf("Failed to load the ensemble types from %s: %s%n", path, ex.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Opens the store of the ensembles, exiting if it fails.
+     *
+     * @param options          The command line options.
+     * @param ensembleRegistry The registry of the ensemble types.
+     */
+    private static EnsembleStore openEnsembleStore(Options options, EnsembleRegistry ensembleRegistry)
+    {
+        EnsembleStore ensembleStore = null;
+        var type = options.get("store", "memory");
+        if (options.has("off-heap") && !type.equals("memory"))
+        {
+            System.err.println("Invalid ensemble store! Only the \"memory\" store holds the musicians off-heap.");
+            System.exit(1);
+        }
+
+        try
+        {
+            ensembleStore = switch (type)
+            {
+                case "memory" -> new MemoryEnsembleStore(options.has("off-heap") ? new MusicianArena() : null);
+                case "disk" -> new DiskEnsembleStore(Path.of(options.get("store-file", "mems.store")), ensembleRegistry,
+                        Integer.parseInt(options.get("cache-size", "1024")), parseAcknowledgement(options));
+                case "sharded" -> ShardedEnsembleStore.open(options.get("shards", "2"), ensembleRegistry,
+                        List.of("--ensemble-types=" + options.get("ensemble-types", "ensembles.properties")));
+                default -> null;
             };
+        }
+        catch (IOException | IllegalArgumentException ex)
+        {
+            System.err.printf("Failed to open the ensemble store: %s%n", ex.getMessage());
+            System.exit(1);
+        }
+
+        if (Objects.isNull(ensembleStore))
+        {
+            System.err.println("Invalid ensemble store! Must be \"memory\", \"disk\" or \"sharded\".");
+            System.exit(1);
+        }
+
+        var store = ensembleStore;
+        Runtime.getRuntime().addShutdownHook(new Thread(() ->
+        {
+            try
+            {
+                store.close();
+            }
+            catch (IOException ex)
+            {
+                System.err.printf("Failed to close the ensemble store: %s%n", ex.getMessage());
+            }
+        }));
+        return store;
+    }
+
+    /**
+     * Selects between the global and the per-ensemble undo/redo histories, exiting if invalid.
+     *
+     * @param options The command line options.
+     */
+    private static Histories openHistories(Options options)
+    {
+        var history = options.get("history", "global");
+        if (!history.equals("global") && !history.equals("ensemble"))
+        {
+            System.err.println("Invalid history! Must be \"global\" or \"ensemble\".");
+            System.exit(1);
+        }
+
+        return new Histories(history.equals("ensemble"));
+    }
+
+    /**
+     * Selects when a change is acknowledged by the journal or the disk store, exiting if invalid.
+     *
+     * @param options The command line options.
+     */
+    private static Journal.Acknowledgement parseAcknowledgement(Options options)
+    {
+        try
+        {
+            return Journal.Acknowledgement.valueOf(options.get("ack", "enqueue").toUpperCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException ex)
+        {
+            System.err.println("Invalid acknowledgement! Must be \"enqueue\" or \"durable\".");
+            System.exit(1);
+        }
+
+        return null;
+    }
+
+    /**
+     * Replays the journal and opens it for persisting all the further changes, exiting if it fails. The journal is only
+     * replayed onto an empty memory or sharded store, a store holding the ensembles already, e.g. a disk store or a
+     * follower, is refused rather than having the changes applied twice. The versions of the ensembles are replayed
+     * along.
+     *
+     * @param options          The command line options.
+     * @param ensembleStore    The store of the ensembles.
+     * @param ensembleRegistry The registry of the ensemble types.
+     * @param ensembleVersions The past versions of the ensembles.
+     */
+    private static Journal openJournal(Options options, EnsembleStore ensembleStore, EnsembleRegistry ensembleRegistry,
+                                       EnsembleVersions ensembleVersions)
+    {
+        var isReplayable = (ensembleStore instanceof MemoryEnsembleStore) || (ensembleStore instanceof ShardedEnsembleStore);
+        if (!isReplayable || !ensembleStore.isEmpty())
+        {
+            System.err.println("Invalid journal! It can only be replayed onto an empty memory or sharded store.");
+            System.exit(1);
+        }
+
+        var path = Path.of(options.get("journal", "mems.journal"));
+        var acknowledgement = parseAcknowledgement(options);
+        try
+        {
+            var count = Journal.replay(path, ensembleVersions.track(ensembleStore), ensembleRegistry, ensembleVersions);
+            if (count > 0) { System.out.printf("%d change(s) are replayed from the journal.%n", count); }
+
+            var journal = new Journal(path, acknowledgement);
+            Runtime.getRuntime().addShutdownHook(new Thread(() ->
+            {
+                try
+                {
+                    journal.close();
+                }
+                catch (IOException ex)
+                {
+                    System.err.printf("Failed to write the journal: %s%n", ex.getMessage());
+                }
+                System.err.println(journal);
+            }));
+            return journal;
+        }
+        catch (IOException ex)
+        {
+            System.err.printf("Failed to open the journal: %s%n", ex.getMessage());
+            System.exit(1);
+        }
+
+        return null;
+    }
 
-            if (Objects.nonNull(command) && command.execute())
+    /**
+     * Serves the store as a shard to the routers instead of the console, exiting if it fails. A worker started by a
+     * router exits with it.
+     *
+     * @param options          The command line options.
+     * @param ensembleStore    The store of the shard.
+     * @param ensembleRegistry The registry of the ensemble types.
+     */
+    private static void startShard(Options options, EnsembleStore ensembleStore, EnsembleRegistry ensembleRegistry)
+    {
+        try
+        {
+            var port = new ShardServer(ensembleStore, ensembleRegistry).start(Integer.parseInt(options.get("shard", "9000")));
+            System.out.printf("MEMS shard is listening on port %d.%n", port);
+            System.out.flush();
+        }
+        catch (IOException | IllegalArgumentException ex)
+        {
+            System.err.printf("Failed to start the shard: %s%n", ex.getMessage());
+            System.exit(1);
+        }
+
+        if (options.has("shard-owner"))
+        {
+            ProcessHandle.of(Long.parseLong(options.get("shard-owner", "")))
+                    .ifPresentOrElse(owner -> owner.onExit().thenRun(() -> System.exit(0)), () -> System.exit(0));
+        }
+    }
+
+    /**
+     * Follows a leader instead of opening a store, exiting if its first snapshot is not received in time.
+     *
+     * @param options          The command line options.
+     * @param ensembleRegistry The registry of the ensemble types.
+     */
+    private static ReplicationFollower startFollower(Options options, EnsembleRegistry ensembleRegistry)
+    {
+        try
+        {
+            var follower = new ReplicationFollower(options.get("follow", "localhost:9200"), ensembleRegistry);
+            if (!follower.start(5000))
             {
-                // Clear the redo stack when the command requested to be pushed to the undo stack
-                if (!redoStack.isEmpty()) { redoStack.clear(); }
-                undoStack.push(command);
+                System.err.println("Failed to receive a snapshot from the leader in time!");
+                System.exit(1);
             }
 
-            System.out.println();
-            System.out.println();
+            return follower;
+        }
+        catch (IllegalArgumentException | InterruptedException ex)
+        {
+            System.err.printf("Failed to follow the leader: %s%n", ex.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Ships the changes made by the commands to the followers, exiting if it fails.
+     *
+     * @param options    The command line options.
+     * @param assignment The instance of the system to replicate.
+     */
+    private static void startReplication(Options options, Assignment assignment)
+    {
+        try
+        {
+            var leader = new ReplicationLeader(assignment.ensembleStore, assignment.commandLock);
+            var port = leader.start(Integer.parseInt(options.get("replicate", "9200")));
+            assignment.addChangeListener(leader);
+            System.out.printf("MEMS replication is listening on port %d.%n", port);
         }
+        catch (IOException | IllegalArgumentException ex)
+        {
+            System.err.printf("Failed to start the replication: %s%n", ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Serves the HTTP API instead of the console.
+     *
+     * @param options    The command line options.
+     * @param assignment The instance of the system to serve.
+     */
+    private static void startHttpApi(Options options, Assignment assignment)
+    {
+        try
+        {
+            var port = Integer.parseInt(options.get("http", "8080"));
+            var httpApi = new HttpApi(assignment, assignment.ensembleStore, assignment.histories);
+            assignment.addChangeListener(httpApi);
+            httpApi.start(port);
+            System.out.printf("MEMS HTTP API is listening on port %d.%n", port);
+        }
+        catch (IOException | IllegalArgumentException ex)
+        {
+            System.err.printf("Failed to start the HTTP API: %s%n", ex.getMessage());
+            System.exit(1);
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        Options options = null;
+        try
+        {
+            options = Options.parse(args, "ensemble-types", "off-heap", "store", "store-file", "cache-size", "journal", "ack",
+                    "http", "history", "shards", "shard", "shard-owner", "replicate", "follow");
+        }
+        catch (IllegalArgumentException ex)
+        {
+            System.err.println(ex.getMessage());
+            System.exit(1);
+        }
+
+        var ensembleRegistry = loadEnsembleRegistry(options);
+        var follower = options.has("follow") ? startFollower(options, ensembleRegistry) : null;
+        var ensembleStore = Objects.nonNull(follower) ? follower.getEnsembleStore() : openEnsembleStore(options, ensembleRegistry);
+        if (options.has("shard"))
+        {
+            startShard(options, ensembleStore, ensembleRegistry);
+            return;
+        }
+
+        var histories = openHistories(options);
+        var assignment = new Assignment(ensembleStore, ensembleRegistry, histories, new ConsoleReader(System.in),
+                new ConsoleWriter(System.out, true), new ConsoleWriter(System.err, true));
+        if (options.has("journal"))
+        {
+            assignment.addChangeListener(openJournal(options, ensembleStore, ensembleRegistry, assignment.ensembleVersions));
+        }
+        if (Objects.nonNull(follower)) { assignment.follow(follower); }
+        if (options.has("replicate")) { startReplication(options, assignment); }
+        if (options.has("http"))
+        {
+            startHttpApi(options, assignment);
+            return;
+        }
+
+        assignment.run();
+        System.exit(0);
     }
 
     /**
-     * A snapshot of the {@link Assignment} class.
+     * A snapshot of an {@link Assignment} instance.
      */
     static class State
     {
+        private final Assignment assignment;
         private final String activeEnsembleId;
 
-        State()
+        State(Assignment assignment)
         {
-            activeEnsembleId = Assignment.activeEnsembleId;
+            this.assignment = assignment;
+            activeEnsembleId = assignment.activeEnsembleId;
         }
 
         /**
-         * Restores the {@link Assignment} class back to the snapshot.
+         * Restores the {@link Assignment} instance back to the snapshot.
          */
         void restore()
         {
             // Print a message when the active ensemble was changed
-            if (!Objects.equals(Assignment.activeEnsembleId, activeEnsembleId))
+            if (!Objects.equals(assignment.activeEnsembleId, activeEnsembleId))
             {
-                Assignment.activeEnsembleId = activeEnsembleId;
+                assignment.activeEnsembleId = activeEnsembleId;
                 if (Objects.isNull(activeEnsembleId))
                 {
-                    System.out.println("The current ensemble is changed to NONE.");
+                    assignment.out.println("The current ensemble is changed to NONE.");
                     return;
                 }
 
-                System.out.printf("The current ensemble is changed to %s (ID: %s).%n",
-                        ensembleMap.get(activeEnsembleId).getName(), activeEnsembleId);
+                assignment.out.printf("The current ensemble is changed to %s (ID: %s).%n",
+                        assignment.ensembleStore.get(activeEnsembleId).getName(), activeEnsembleId);
             }
         }
     }
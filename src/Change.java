@@ -0,0 +1,214 @@
+import java.util.Objects;
+
+/**
+ * A compact record of a single state change made by a {@link Command}.
+ *
+ * @param kind       The kind of the change.
+ * @param ensembleId The ID of the affected {@link Ensemble}.
+ * @param subject    The ensemble type for {@link Kind#CREATE_ENSEMBLE}, the musician ID for musician changes, otherwise
+ *                   {@code null}.
+ * @param name       The new ensemble or musician name, {@code null} if not applicable.
+ * @param role       The musician role, {@code 0} if not applicable.
+ */
+record Change(Kind kind, String ensembleId, String subject, String name, int role)
+{
+    /** The field separator of an encoded change. */
+    private static final char SEPARATOR = '\t';
+
+    static Change createEnsemble(Ensemble ensemble)
+    {
+        return new Change(Kind.CREATE_ENSEMBLE, ensemble.getEnsembleID(), ensemble.getType().getKey(), ensemble.getName(), 0);
+    }
+
+    static Change removeEnsemble(Ensemble ensemble)
+    {
+        return new Change(Kind.REMOVE_ENSEMBLE, ensemble.getEnsembleID(), null, null, 0);
+    }
+
+    static Change renameEnsemble(Ensemble ensemble)
+    {
+        return new Change(Kind.RENAME_ENSEMBLE, ensemble.getEnsembleID(), null, ensemble.getName(), 0);
+    }
+
+    static Change addMusician(Ensemble ensemble, Musician musician)
+    {
+        return new Change(Kind.ADD_MUSICIAN, ensemble.getEnsembleID(), musician.getMID(), musician.getName(), musician.getRole());
+    }
+
+    static Change dropMusician(Ensemble ensemble, Musician musician)
+    {
+        return new Change(Kind.DROP_MUSICIAN, ensemble.getEnsembleID(), musician.getMID(), null, 0);
+    }
+
+    static Change updateMusicianRole(Ensemble ensemble, Musician musician)
+    {
+        return new Change(Kind.UPDATE_ROLE, ensemble.getEnsembleID(), musician.getMID(), null, musician.getRole());
+    }
+
+    /**
+     * Applies the change to a store of {@link Ensemble}s.
+     *
+     * @param ensembleStore    The store to apply to.
+     * @param ensembleRegistry The registry of the ensemble types.
+     */
+    void apply(EnsembleStore ensembleStore, EnsembleRegistry ensembleRegistry)
+    {
+        if (kind == Kind.CREATE_ENSEMBLE)
+        {
+            var type = ensembleRegistry.get(subject);
+            if (Objects.isNull(type))
+            {
+                throw new IllegalStateException(String.format("Invalid ensemble type: %s", subject));
+            }
+
+            var ensemble = new Ensemble(ensembleId, type);
+            ensemble.setName(name);
+            ensembleStore.put(ensemble);
+            return;
+        }
+        else if (kind == Kind.REMOVE_ENSEMBLE)
+        {
+            ensembleStore.remove(ensembleId);
+            return;
+        }
+
+        var ensemble = Objects.requireNonNull(ensembleStore.get(ensembleId), ensembleId);
+        switch (kind)
+        {
+            case RENAME_ENSEMBLE -> ensemble.setName(name);
+            case ADD_MUSICIAN ->
+            {
+                var musician = new Musician(subject);
+                musician.setName(name);
+                musician.setRole(role);
+                ensemble.addMusician(musician);
+            }
+            case DROP_MUSICIAN -> ensemble.dropMusician(findMusician(ensemble));
+            case UPDATE_ROLE -> findMusician(ensemble).setRole(role);
+        }
+        ensembleStore.changed(this);
+    }
+
+    private Musician findMusician(Ensemble ensemble)
+    {
+        for (var musician : ensemble.readMusicians())
+        {
+            if (Objects.equals(musician.getMID(), subject)) { return ensemble.keep(musician); }
+        }
+
+        throw new IllegalStateException(String.format("Musician ID does not exist: %s", subject));
+    }
+
+    /**
+     * Encodes the change into a single line of text, without the line terminator.
+     */
+    String encode()
+    {
+        var builder = new StringBuilder(64);
+        builder.append(kind.code).append(SEPARATOR);
+        escape(builder, ensembleId).append(SEPARATOR);
+        escape(builder, subject).append(SEPARATOR);
+        escape(builder, name).append(SEPARATOR);
+        return builder.append(role).toString();
+    }
+
+    /**
+     * Decodes a change previously encoded by {@link #encode()}.
+     *
+     * @param line The encoded change.
+     * @return The decoded change.
+     * @throws IllegalArgumentException If the line is malformed.
+     */
+    static Change decode(String line)
+    {
+        var fields = new String[5];
+        var builder = new StringBuilder();
+        var field = 0;
+        var isNull = false;
+        for (var i = 0; i < line.length(); i++)
+        {
+            var c = line.charAt(i);
+            if (c == SEPARATOR)
+            {
+                if (field == fields.length - 1) { throw new IllegalArgumentException("Malformed change: " + line); }
+                fields[field++] = isNull ? null : builder.toString();
+                builder.setLength(0);
+                isNull = false;
+            }
+            else if (c == '\\' && i + 1 < line.length())
+            {
+                var escaped = line.charAt(++i);
+                switch (escaped)
+                {
+                    case 't' -> builder.append('\t');
+                    case 'n' -> builder.append('\n');
+                    case 'r' -> builder.append('\r');
+                    case '0' -> isNull = true;
+                    default -> builder.append(escaped);
+                }
+            }
+            else
+            {
+                builder.append(c);
+            }
+        }
+        fields[field] = isNull ? null : builder.toString();
+        if (field != fields.length - 1) { throw new IllegalArgumentException("Malformed change: " + line); }
+
+        try
+        {
+            return new Change(Kind.of(fields[0]), fields[1], fields[2], fields[3], Integer.parseInt(fields[4]));
+        }
+        catch (NumberFormatException ex)
+        {
+            throw new IllegalArgumentException("Malformed change: " + line, ex);
+        }
+    }
+
+    private static StringBuilder escape(StringBuilder builder, String value)
+    {
+        if (Objects.isNull(value)) { return builder.append("\\0"); }
+
+        for (var i = 0; i < value.length(); i++)
+        {
+            var c = value.charAt(i);
+            switch (c)
+            {
+                case '\t' -> builder.append("\\t");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                case '\\' -> builder.append("\\\\");
+                default -> builder.append(c);
+            }
+        }
+
+        return builder;
+    }
+
+    enum Kind
+    {
+        CREATE_ENSEMBLE("+E"),
+        REMOVE_ENSEMBLE("-E"),
+        RENAME_ENSEMBLE("=E"),
+        ADD_MUSICIAN("+M"),
+        DROP_MUSICIAN("-M"),
+        UPDATE_ROLE("=M");
+
+        private final String code;
+
+        Kind(String code)
+        {
+            this.code = code;
+        }
+
+        static Kind of(String code)
+        {
+            for (var kind : values())
+            {
+                if (kind.code.equals(code)) { return kind; }
+            }
+
+            throw new IllegalArgumentException(String.format("Invalid change kind: %s", code));
+        }
+    }
+}
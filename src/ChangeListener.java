@@ -0,0 +1,20 @@
+/**
+ * A listener to the {@link Change}s made by {@link Command}s.
+ */
+@FunctionalInterface
+interface ChangeListener
+{
+    /**
+     * Invoked after a change has been made by the execution, undo or redo of a command.
+     *
+     * @param change The change.
+     */
+    void changed(Change change);
+
+    /**
+     * Invoked after all the changes made by the execution, undo or redo of a command.
+     *
+     * @param timestamp The time the changes are committed at, in milliseconds since the epoch.
+     */
+    default void committed(long timestamp) {}
+}
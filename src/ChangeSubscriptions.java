@@ -0,0 +1,152 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Subscriptions to the {@link Change}s made by the commands.
+ * <p>
+ * The changes of a command are held back until it commits, and then handed to each subscriber through its own bounded
+ * queue, so that no subscriber sees a command half done. Publishing never blocks: when a queue is full, the change is
+ * handled by the {@link Overflow} policy of the subscription, so a slow subscriber never stalls the commands.
+ */
+class ChangeSubscriptions implements ChangeListener
+{
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    /** The changes of the current command, published once it commits. */
+    private final List<Change> pending = new ArrayList<>();
+
+    /**
+     * Subscribes to the changes.
+     *
+     * @param ensembleId The ID of the ensemble to watch, {@code null} to watch all the ensembles.
+     * @param capacity   The capacity of the queue.
+     * @param overflow   What to do when the queue is full.
+     * @return The subscription, to be closed when no longer needed.
+     */
+    Subscription subscribe(String ensembleId, int capacity, Overflow overflow)
+    {
+        if (capacity < 1) { throw new IllegalArgumentException("Capacity must be positive"); }
+
+        var subscription = new Subscription(ensembleId, capacity, overflow);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    @Override
+    public void changed(Change change)
+    {
+        if (!subscriptions.isEmpty()) { pending.add(change); }
+    }
+
+    @Override
+    public void committed(long timestamp)
+    {
+        for (var subscription : subscriptions)
+        {
+            for (var change : pending)
+            {
+                if (Objects.isNull(subscription.ensembleId) || subscription.ensembleId.equals(change.ensembleId()))
+                {
+                    subscription.offer(change);
+                }
+            }
+        }
+        pending.clear();
+    }
+
+    /**
+     * What to do with a change when the queue of a subscription is full.
+     */
+    enum Overflow
+    {
+        /** Drop the new change, keeping the queued ones. */
+        DROP,
+        /**
+         * Keep only the latest change of each ensemble: the new change replaces the ones of its ensemble queued, or the
+         * oldest queued change if there is none, so that a slow subscriber still learns of the ensembles changed and is
+         * to read their latest state from the store.
+         */
+        COALESCE
+    }
+
+    /**
+     * A subscription, with its bounded queue of changes.
+     */
+    class Subscription implements AutoCloseable
+    {
+        private final String ensembleId;
+        /** The queued changes, guarded by this. */
+        private final ArrayDeque<Change> queue;
+        private final int capacity;
+        private final Overflow overflow;
+        /** The number of changes dropped or replaced since the last call to {@link #takeMissed()}, guarded by this. */
+        private long missed = 0;
+
+        private Subscription(String ensembleId, int capacity, Overflow overflow)
+        {
+            this.ensembleId = ensembleId;
+            queue = new ArrayDeque<>(capacity);
+            this.capacity = capacity;
+            this.overflow = Objects.requireNonNull(overflow);
+        }
+
+        /**
+         * Takes the next change, waiting until there is one.
+         *
+         * @throws InterruptedException If interrupted while waiting.
+         */
+        synchronized Change take() throws InterruptedException
+        {
+            while (queue.isEmpty()) { wait(); }
+            return queue.poll();
+        }
+
+        /**
+         * Takes the next change if there is one.
+         *
+         * @return The change, or {@code null} if there is none.
+         */
+        synchronized Change poll()
+        {
+            return queue.poll();
+        }
+
+        /**
+         * Gets and resets the number of changes dropped or coalesced since the last call.
+         */
+        synchronized long takeMissed()
+        {
+            var missed = this.missed;
+            this.missed = 0;
+            return missed;
+        }
+
+        @Override
+        public void close()
+        {
+            subscriptions.remove(this);
+        }
+
+        private synchronized void offer(Change change)
+        {
+            if (queue.size() == capacity)
+            {
+                if (overflow == Overflow.DROP)
+                {
+                    missed++;
+                    return;
+                }
+
+                var size = queue.size();
+                queue.removeIf(queued -> queued.ensembleId().equals(change.ensembleId()));
+                if (queue.size() == size) { queue.poll(); }
+                missed += size - queue.size();
+            }
+
+            queue.add(change);
+            notifyAll();
+        }
+    }
+}
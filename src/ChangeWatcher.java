@@ -0,0 +1,90 @@
+import java.io.PrintStream;
+import java.util.Objects;
+
+/**
+ * Tails the changes of an ensemble to a stream on a background thread.
+ */
+class ChangeWatcher
+{
+    /** The capacity of the queue of the subscription. */
+    private static final int CAPACITY = 64;
+
+    private final ChangeSubscriptions changeSubscriptions;
+    private final PrintStream out;
+
+    private String ensembleId = null;
+    private ChangeSubscriptions.Subscription subscription = null;
+    private Thread thread = null;
+
+    ChangeWatcher(ChangeSubscriptions changeSubscriptions, PrintStream out)
+    {
+        this.changeSubscriptions = changeSubscriptions;
+        this.out = out;
+    }
+
+    /**
+     * Starts watching an ensemble, or stops if it is already being watched. Only one ensemble is watched at a time.
+     *
+     * @param ensembleId The ID of the ensemble.
+     * @return {@code true} if the ensemble is being watched afterwards.
+     */
+    synchronized boolean toggle(String ensembleId)
+    {
+        var isWatching = Objects.equals(this.ensembleId, ensembleId);
+        stop();
+        if (isWatching) { return false; }
+
+        this.ensembleId = ensembleId;
+        var subscription = this.subscription = changeSubscriptions.subscribe(ensembleId, CAPACITY,
+                ChangeSubscriptions.Overflow.COALESCE);
+        thread = new Thread(() -> tail(subscription), "change-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Stops watching.
+     */
+    synchronized void stop()
+    {
+        if (Objects.isNull(subscription)) { return; }
+
+        subscription.close();
+        thread.interrupt();
+        ensembleId = null;
+        subscription = null;
+        thread = null;
+    }
+
+    private void tail(ChangeSubscriptions.Subscription subscription)
+    {
+        try
+        {
+            while (true)
+            {
+                var change = subscription.take();
+                var missed = subscription.takeMissed();
+                if (missed > 0) { out.printf("[watch] %d earlier change(s) are coalesced.%n", missed); }
+                out.printf("[watch] %s: %s%n", change.ensembleId(), describe(change));
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            // Stopped watching
+        }
+    }
+
+    private static String describe(Change change)
+    {
+        return switch (change.kind())
+        {
+            case CREATE_ENSEMBLE -> String.format("Ensemble is created: %s (type %s)", change.name(), change.subject());
+            case REMOVE_ENSEMBLE -> "Ensemble is removed";
+            case RENAME_ENSEMBLE -> String.format("Ensemble name is changed to %s", change.name());
+            case ADD_MUSICIAN -> String.format("Musician is added: %s (ID: %s), role %d", change.name(), change.subject(), change.role());
+            case DROP_MUSICIAN -> String.format("Musician is deleted (ID: %s)", change.subject());
+            case UPDATE_ROLE -> String.format("Musician role is updated (ID: %s), role %d", change.subject(), change.role());
+        };
+    }
+}
@@ -1,6 +1,21 @@
-import java.util.Map;
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Stack;
+import java.util.StringJoiner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
 
 interface Command
 {
@@ -20,141 +35,168 @@ interface Command
      * Redo the command.
      */
     default void redo() {}
+
+    /**
+     * Check whether the command can still be undone, otherwise it is kept in the undo stack.
+     */
+    default boolean canUndo() { return true; }
+
+    /**
+     * Check whether the command can still be redone, otherwise it is kept in the redo stack.
+     */
+    default boolean canRedo() { return true; }
+
+    /**
+     * Get the ID of the ensemble the command operates on, which determines its history in the per-ensemble mode.
+     *
+     * @return The ID of the ensemble, or {@code null} if it does not operate on one.
+     */
+    default String getEnsembleId() { return null; }
 }
 
 class CreateEnsembleCommand implements Command
 {
-    private final Assignment.State state = new Assignment.State();
-    private final Map<String, Ensemble> ensembleMap;
+    private final Assignment assignment;
+    private Assignment.State state;
+    private final EnsembleStore ensembleStore;
+    private final EnsembleRegistry ensembleRegistry;
+    private final ChangeListener changeListener;
     private Ensemble ensemble;
 
-    CreateEnsembleCommand(Map<String, Ensemble> ensembleMap)
+    CreateEnsembleCommand(Assignment assignment, EnsembleStore ensembleStore, EnsembleRegistry ensembleRegistry,
+                          ChangeListener changeListener)
     {
-        this.ensembleMap = ensembleMap;
+        this.assignment = assignment;
+        this.ensembleStore = ensembleStore;
+        this.ensembleRegistry = ensembleRegistry;
+        this.changeListener = changeListener;
     }
 
     @Override
     public boolean execute()
     {
-        System.out.print("Ensemble type [o = orchestra / j = jazz band]: ");
-        var type = Assignment.scanner.nextLine().trim().toLowerCase();
+        assignment.out.print(ensembleRegistry.getTypePrompt());
+        var type = assignment.reader.nextLine().trim().toLowerCase();
         if (type.isEmpty())
         {
-            System.err.println("Ensemble type cannot be empty!");
+            assignment.err.println("Ensemble type cannot be empty!");
             return false;
         }
 
-        System.out.print("Ensemble ID: ");
-        var ensembleId = Assignment.scanner.nextLine().trim();
+        assignment.out.print("Ensemble ID: ");
+        var ensembleId = assignment.reader.nextLine().trim();
         if (ensembleId.isEmpty())
         {
-            System.err.println("Ensemble ID cannot be empty!");
+            assignment.err.println("Ensemble ID cannot be empty!");
             return false;
         }
-        else if (ensembleMap.containsKey(ensembleId))
+        else if (ensembleStore.contains(ensembleId))
         {
-            System.err.println("Ensemble ID already exist!");
+            assignment.err.println("Ensemble ID already exist!");
             return false;
         }
 
-        ensemble = switch (type)
+        var ensembleType = ensembleRegistry.get(type);
+        if (Objects.isNull(ensembleType))
         {
-            case "o" -> createOrchestraEnsemble(ensembleId);
-            case "j" -> createJazzBandEnsemble(ensembleId);
-            default -> null;
-        };
-        if (Objects.isNull(ensemble))
-        {
-            System.err.println("Invalid ensemble type!");
+            assignment.err.println("Invalid ensemble type!");
             return false;
         }
+        ensemble = new Ensemble(ensembleId, ensembleType);
 
-        System.out.print("Ensemble name: ");
-        var ensembleName = Assignment.scanner.nextLine().trim();
+        assignment.out.print("Ensemble name: ");
+        var ensembleName = assignment.reader.nextLine().trim();
         if (ensembleName.isEmpty())
         {
-            System.err.println("Ensemble name cannot be empty!");
+            assignment.err.println("Ensemble name cannot be empty!");
             return false;
         }
 
         ensemble.setName(ensembleName);
-        ensembleMap.put(ensemble.getEnsembleID(), ensemble);
-        System.out.println("Ensemble is created.");
-        Assignment.setActiveEnsemble(ensemble);
+        state = new Assignment.State(assignment);
+        ensembleStore.put(ensemble);
+        changeListener.changed(Change.createEnsemble(ensemble));
+        assignment.out.println("Ensemble is created.");
+        assignment.setActiveEnsemble(ensemble);
         return true;
     }
 
     @Override
     public void undo()
     {
-        ensembleMap.remove(ensemble.getEnsembleID());
+        ensembleStore.remove(ensemble.getEnsembleID());
+        changeListener.changed(Change.removeEnsemble(ensemble));
         state.restore();
     }
 
     @Override
     public void redo()
     {
-        ensembleMap.put(ensemble.getEnsembleID(), ensemble);
-        Assignment.setActiveEnsemble(ensemble);
+        ensembleStore.put(ensemble);
+        changeListener.changed(Change.createEnsemble(ensemble));
+        assignment.setActiveEnsemble(ensemble);
     }
 
     @Override
-    public String toString()
-    {
-        return String.format("Create %s: %s (ID: %s)", ensemble.getClass().getSimpleName(), ensemble.getName(), ensemble.getEnsembleID());
-    }
-
-    private OrchestraEnsemble createOrchestraEnsemble(String ensembleId)
+    public String getEnsembleId()
     {
-        return new OrchestraEnsemble(ensembleId);
+        return ensemble.getEnsembleID();
     }
 
-    private JazzBandEnsemble createJazzBandEnsemble(String ensembleId)
+    @Override
+    public String toString()
     {
-        return new JazzBandEnsemble(ensembleId);
+        return String.format("Create %s: %s (ID: %s)", ensemble.getType().getLabel(), ensemble.getName(), ensemble.getEnsembleID());
     }
 }
 
 @SuppressWarnings("ClassCanBeRecord")
 class SetCurrentEnsembleCommand implements Command
 {
-    private final Map<String, Ensemble> ensembleMap;
+    private final Assignment assignment;
+    private final EnsembleStore ensembleStore;
 
-    SetCurrentEnsembleCommand(Map<String, Ensemble> ensembleMap)
+    SetCurrentEnsembleCommand(Assignment assignment, EnsembleStore ensembleStore)
     {
-        this.ensembleMap = ensembleMap;
+        this.assignment = assignment;
+        this.ensembleStore = ensembleStore;
     }
 
     @Override
     public boolean execute()
     {
-        System.out.print("Ensemble ID: ");
-        String activeEnsembleId = Assignment.scanner.nextLine().trim();
+        assignment.out.print("Ensemble ID: ");
+        String activeEnsembleId = assignment.reader.nextLine().trim();
         if (activeEnsembleId.isEmpty())
         {
-            System.err.println("Ensemble ID cannot be empty!");
+            assignment.err.println("Ensemble ID cannot be empty!");
             return false;
         }
-        else if (!ensembleMap.containsKey(activeEnsembleId))
+        else if (!ensembleStore.contains(activeEnsembleId))
         {
-            System.err.println("Ensemble ID does not exist!");
+            assignment.err.println("Ensemble ID does not exist!");
             return false;
         }
 
-        Assignment.setActiveEnsemble(activeEnsembleId);
+        assignment.setActiveEnsemble(activeEnsembleId);
         return false;
     }
 }
 
 class AddMusicianCommand implements Command
 {
-    private final Assignment.State state = new Assignment.State();
+    private final Assignment assignment;
+    private Assignment.State state;
     private final Ensemble ensemble;
+    private final ChangeListener changeListener;
     private Musician musician;
 
-    AddMusicianCommand(Map<String, Ensemble> ensembleMap, String activeEnsembleId)
+    AddMusicianCommand(Assignment assignment, EnsembleStore ensembleStore, String activeEnsembleId,
+                       ChangeListener changeListener)
     {
-        ensemble = Objects.nonNull(activeEnsembleId) ? ensembleMap.get(activeEnsembleId) : null;
+        this.assignment = assignment;
+        ensemble = Objects.nonNull(activeEnsembleId) ? ensembleStore.get(activeEnsembleId) : null;
+        this.changeListener = changeListener;
     }
 
     @Override
@@ -162,53 +204,55 @@ class AddMusicianCommand implements Command
     {
         if (Objects.isNull(ensemble))
         {
-            System.err.println("No ensemble to add to.");
+            assignment.err.println("No ensemble to add to.");
             return false;
         }
 
-        System.out.print("Musician info (ID, name): ");
-        var inputs = Assignment.scanner.nextLine().split(",", 2);
-        if (inputs.length != 2)
+        assignment.out.print("Musician info (ID, name): ");
+        var inputs = new String[2];
+        if (assignment.reader.nextFields(',', inputs) != 2)
         {
-            System.err.println("Malformed input! Must be ID and name separated by comma, e.g. \"M001, Bob Dylan\".");
+            assignment.err.println("Malformed input! Must be ID and name separated by comma, e.g. \"M001, Bob Dylan\".");
             return false;
         }
 
-        var musicianId = inputs[0].trim();
+        var musicianId = inputs[0];
         if (musicianId.isEmpty())
         {
-            System.err.println("Musician ID cannot be empty!");
+            assignment.err.println("Musician ID cannot be empty!");
             return false;
         }
-        for (var musician : ensemble.getMusicians())
+        for (var musician : ensemble.readMusicians())
         {
             if (Objects.equals(musician.getMID(), musicianId))
             {
-                System.err.println("Musician ID already exist!");
+                assignment.err.println("Musician ID already exist!");
                 return false;
             }
         }
 
-        var musicianName = inputs[1].trim();
+        var musicianName = inputs[1];
         if (musicianName.isEmpty())
         {
-            System.err.println("Musician name cannot be empty!");
+            assignment.err.println("Musician name cannot be empty!");
             return false;
         }
 
         musician = createMusician(musicianId, musicianName);
         try
         {
-            ensemble.updateMusicianRole(musician);
+            ensemble.updateMusicianRole(musician, assignment.reader, assignment.out);
         }
         catch (NumberFormatException | InvalidMusicianRoleException ex)
         {
-            System.err.println("Invalid musician role!");
+            assignment.err.println("Invalid musician role!");
             return false;
         }
 
+        state = new Assignment.State(assignment);
         ensemble.addMusician(musician);
-        System.out.println("Musician is created.");
+        changeListener.changed(Change.addMusician(ensemble, musician));
+        assignment.out.println("Musician is created.");
         return true;
     }
 
@@ -216,6 +260,7 @@ class AddMusicianCommand implements Command
     public void undo()
     {
         ensemble.dropMusician(musician);
+        changeListener.changed(Change.dropMusician(ensemble, musician));
         state.restore();
     }
 
@@ -223,7 +268,14 @@ class AddMusicianCommand implements Command
     public void redo()
     {
         ensemble.addMusician(musician);
-        Assignment.setActiveEnsemble(ensemble);
+        changeListener.changed(Change.addMusician(ensemble, musician));
+        assignment.setActiveEnsemble(ensemble);
+    }
+
+    @Override
+    public String getEnsembleId()
+    {
+        return ensemble.getEnsembleID();
     }
 
     @Override
@@ -243,14 +295,19 @@ class AddMusicianCommand implements Command
 
 class ModifyMusicianInstrumentCommand implements Command
 {
-    private final Assignment.State state = new Assignment.State();
+    private final Assignment assignment;
+    private Assignment.State state;
     private final Ensemble ensemble;
+    private final ChangeListener changeListener;
     private Musician musician;
     private Musician.Memento memento;
 
-    ModifyMusicianInstrumentCommand(Map<String, Ensemble> ensembleMap, String activeEnsembleId)
+    ModifyMusicianInstrumentCommand(Assignment assignment, EnsembleStore ensembleStore, String activeEnsembleId,
+                                    ChangeListener changeListener)
     {
-        ensemble = Objects.nonNull(activeEnsembleId) ? ensembleMap.get(activeEnsembleId) : null;
+        this.assignment = assignment;
+        ensemble = Objects.nonNull(activeEnsembleId) ? ensembleStore.get(activeEnsembleId) : null;
+        this.changeListener = changeListener;
     }
 
     @Override
@@ -258,43 +315,47 @@ class ModifyMusicianInstrumentCommand implements Command
     {
         if (Objects.isNull(ensemble))
         {
-            System.err.println("No ensemble to edit from.");
+            assignment.err.println("No ensemble to edit from.");
             return false;
         }
 
-        System.out.print("Musician ID: ");
-        var musicianId = Assignment.scanner.nextLine().trim();
+        assignment.out.print("Musician ID: ");
+        var musicianId = assignment.reader.nextLine().trim();
         if (musicianId.isEmpty())
         {
-            System.err.println("Musician ID cannot be empty!");
+            assignment.err.println("Musician ID cannot be empty!");
             return false;
         }
-        for (var musician : ensemble.getMusicians())
+        for (var musician : ensemble.readMusicians())
         {
             if (Objects.equals(musician.getMID(), musicianId))
             {
-                this.musician = musician;
-                memento = new Musician.Memento(musician);
+                this.musician = ensemble.keep(musician);
                 break;
             }
         }
         if (Objects.isNull(musician))
         {
-            System.err.println("Musician ID does not exist!");
+            assignment.err.println("Musician ID does not exist!");
             return false;
         }
 
+        // Kept only once the new role is valid, as the update validates and sets it at once
+        var memento = new Musician.Memento(musician);
         try
         {
-            ensemble.updateMusicianRole(musician);
+            ensemble.updateMusicianRole(musician, assignment.reader, assignment.out);
         }
         catch (NumberFormatException | InvalidMusicianRoleException ex)
         {
-            System.err.println("Invalid musician role!");
+            assignment.err.println("Invalid musician role!");
             return false;
         }
 
-        System.out.println("Musician role is updated.");
+        this.memento = memento;
+        state = new Assignment.State(assignment);
+        changeListener.changed(Change.updateMusicianRole(ensemble, musician));
+        assignment.out.println("Musician role is updated.");
         return true;
     }
 
@@ -304,6 +365,7 @@ class ModifyMusicianInstrumentCommand implements Command
         var memento = this.memento;
         this.memento = new Musician.Memento(musician);
         memento.restore();
+        changeListener.changed(Change.updateMusicianRole(ensemble, musician));
 
         state.restore();
     }
@@ -314,8 +376,15 @@ class ModifyMusicianInstrumentCommand implements Command
         var memento = this.memento;
         this.memento = new Musician.Memento(musician);
         memento.restore();
+        changeListener.changed(Change.updateMusicianRole(ensemble, musician));
 
-        Assignment.setActiveEnsemble(ensemble);
+        assignment.setActiveEnsemble(ensemble);
+    }
+
+    @Override
+    public String getEnsembleId()
+    {
+        return ensemble.getEnsembleID();
     }
 
     @Override
@@ -325,15 +394,201 @@ class ModifyMusicianInstrumentCommand implements Command
     }
 }
 
+/**
+ * Assigns a new role to all the musicians of the active ensemble selected by their current role, an ID range and a
+ * name pattern, as a single command. The previous roles are kept in a primitive array rather than a memento each.
+ */
+class BulkModifyMusicianInstrumentCommand implements Command
+{
+    private final Assignment assignment;
+    private Assignment.State state;
+    private final Ensemble ensemble;
+    private final ChangeListener changeListener;
+    private Musician[] musicians;
+    /** The roles to swap back in by the next undo or redo, in the order of {@link #musicians}. */
+    private int[] roles;
+    private int role;
+
+    BulkModifyMusicianInstrumentCommand(Assignment assignment, EnsembleStore ensembleStore, String activeEnsembleId,
+                                        ChangeListener changeListener)
+    {
+        this.assignment = assignment;
+        ensemble = Objects.nonNull(activeEnsembleId) ? ensembleStore.get(activeEnsembleId) : null;
+        this.changeListener = changeListener;
+    }
+
+    @Override
+    public boolean execute()
+    {
+        if (Objects.isNull(ensemble))
+        {
+            assignment.err.println("No ensemble to edit from.");
+            return false;
+        }
+
+        assignment.out.print("Current role (blank for any): ");
+        int currentRole;
+        try
+        {
+            currentRole = assignment.reader.nextInt(-1);
+        }
+        catch (NumberFormatException ex)
+        {
+            currentRole = -2;
+        }
+        if ((currentRole != -1) && !ensemble.getType().isValidRole(currentRole))
+        {
+            assignment.err.println("Invalid musician role!");
+            return false;
+        }
+
+        // Separated by a comma, which no musician ID contains, unlike a hyphen
+        assignment.out.print("Musician ID range, e.g. m001, m099 (blank for any): ");
+        var bounds = new String[3];
+        var boundCount = assignment.reader.nextFields(',', bounds);
+        String fromId = "", toId = "";
+        if ((boundCount != 1) || !bounds[0].isEmpty())
+        {
+            if (boundCount != 2)
+            {
+                assignment.err.println("Invalid musician ID range!");
+                return false;
+            }
+            fromId = bounds[0];
+            toId = bounds[1];
+        }
+
+        assignment.out.print("Name pattern, e.g. *Chua (blank for any): ");
+        var namePattern = toNamePattern(assignment.reader.nextLine().trim());
+
+        // Select in a single pass over the musicians
+        var selected = new Musician[16];
+        var count = 0;
+        for (var musician : ensemble.readMusicians())
+        {
+            var musicianId = musician.getMID();
+            if (((currentRole < 0) || (musician.getRole() == currentRole))
+                    && (fromId.isEmpty() || (musicianId.compareTo(fromId) >= 0))
+                    && (toId.isEmpty() || (musicianId.compareTo(toId) <= 0))
+                    && (Objects.isNull(namePattern) || namePattern.matcher(musician.getName()).matches()))
+            {
+                if (count == selected.length) { selected = Arrays.copyOf(selected, count * 2); }
+                selected[count++] = ensemble.keep(musician);
+            }
+        }
+        if (count == 0)
+        {
+            assignment.err.println("No musician is selected!");
+            return false;
+        }
+
+        assignment.out.printf("%d musician(s) are selected.%n", count);
+        assignment.out.print(ensemble.getType().getRolePrompt());
+        try
+        {
+            role = assignment.reader.nextInt();
+        }
+        catch (NumberFormatException ex)
+        {
+            role = -1;
+        }
+        if (!ensemble.getType().isValidRole(role))
+        {
+            assignment.err.println("Invalid musician role!");
+            return false;
+        }
+
+        state = new Assignment.State(assignment);
+        musicians = Arrays.copyOf(selected, count);
+        roles = new int[count];
+        for (var i = 0; i < count; i++)
+        {
+            roles[i] = musicians[i].getRole();
+            musicians[i].setRole(role);
+            changeListener.changed(Change.updateMusicianRole(ensemble, musicians[i]));
+        }
+        assignment.out.printf("%d musician role(s) are updated.%n", count);
+        return true;
+    }
+
+    @Override
+    public void undo()
+    {
+        swapRoles();
+        state.restore();
+    }
+
+    @Override
+    public void redo()
+    {
+        swapRoles();
+        assignment.setActiveEnsemble(ensemble);
+    }
+
+    /**
+     * Swaps the roles of the musicians with the ones kept, which turns an undo into the matching redo and vice versa.
+     */
+    private void swapRoles()
+    {
+        for (var i = 0; i < musicians.length; i++)
+        {
+            var role = musicians[i].getRole();
+            musicians[i].setRole(roles[i]);
+            roles[i] = role;
+            changeListener.changed(Change.updateMusicianRole(ensemble, musicians[i]));
+        }
+    }
+
+    /**
+     * Converts a name pattern with {@code *} and {@code ?} wildcards into a case-insensitive regular expression,
+     * {@code null} for a blank pattern matching any name.
+     */
+    private static Pattern toNamePattern(String pattern)
+    {
+        if (pattern.isEmpty()) { return null; }
+
+        var regex = new StringBuilder();
+        for (var i = 0; i < pattern.length(); i++)
+        {
+            var c = pattern.charAt(i);
+            switch (c)
+            {
+                case '*' -> regex.append(".*");
+                case '?' -> regex.append('.');
+                default -> regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+
+    @Override
+    public String getEnsembleId()
+    {
+        return ensemble.getEnsembleID();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Bulk modify musician role: %d musician(s), role %d", musicians.length, role);
+    }
+}
+
 class DeleteMusicianCommand implements Command
 {
-    private final Assignment.State state = new Assignment.State();
+    private final Assignment assignment;
+    private Assignment.State state;
     private final Ensemble ensemble;
+    private final ChangeListener changeListener;
     private Musician musician;
 
-    DeleteMusicianCommand(Map<String, Ensemble> ensembleMap, String activeEnsembleId)
+    DeleteMusicianCommand(Assignment assignment, EnsembleStore ensembleStore, String activeEnsembleId,
+                          ChangeListener changeListener)
     {
-        ensemble = Objects.nonNull(activeEnsembleId) ? ensembleMap.get(activeEnsembleId) : null;
+        this.assignment = assignment;
+        ensemble = Objects.nonNull(activeEnsembleId) ? ensembleStore.get(activeEnsembleId) : null;
+        this.changeListener = changeListener;
     }
 
     @Override
@@ -341,33 +596,35 @@ class DeleteMusicianCommand implements Command
     {
         if (Objects.isNull(ensemble))
         {
-            System.err.println("No ensemble to delete from.");
+            assignment.err.println("No ensemble to delete from.");
             return false;
         }
 
-        System.out.print("Musician ID: ");
-        var musicianId = Assignment.scanner.nextLine().trim();
+        assignment.out.print("Musician ID: ");
+        var musicianId = assignment.reader.nextLine().trim();
         if (musicianId.isEmpty())
         {
-            System.err.println("Musician ID cannot be empty!");
+            assignment.err.println("Musician ID cannot be empty!");
             return false;
         }
-        for (var musician : ensemble.getMusicians())
+        for (var musician : ensemble.readMusicians())
         {
             if (Objects.equals(musician.getMID(), musicianId))
             {
-                this.musician = musician;
+                this.musician = ensemble.keep(musician);
                 break;
             }
         }
         if (Objects.isNull(musician))
         {
-            System.err.println("Musician ID does not exist!");
+            assignment.err.println("Musician ID does not exist!");
             return false;
         }
 
+        state = new Assignment.State(assignment);
         ensemble.dropMusician(musician);
-        System.out.println("Musician is deleted.");
+        changeListener.changed(Change.dropMusician(ensemble, musician));
+        assignment.out.println("Musician is deleted.");
         return true;
     }
 
@@ -375,6 +632,7 @@ class DeleteMusicianCommand implements Command
     public void undo()
     {
         ensemble.addMusician(musician);
+        changeListener.changed(Change.addMusician(ensemble, musician));
         state.restore();
     }
 
@@ -382,7 +640,14 @@ class DeleteMusicianCommand implements Command
     public void redo()
     {
         ensemble.dropMusician(musician);
-        Assignment.setActiveEnsemble(ensemble);
+        changeListener.changed(Change.dropMusician(ensemble, musician));
+        assignment.setActiveEnsemble(ensemble);
+    }
+
+    @Override
+    public String getEnsembleId()
+    {
+        return ensemble.getEnsembleID();
     }
 
     @Override
@@ -392,67 +657,461 @@ class DeleteMusicianCommand implements Command
     }
 }
 
+/**
+ * Moves musicians from the active ensemble to another one as a single command, mapping their roles by name between
+ * the ensemble types and asking only for the roles without a match. Both ensembles are locked meanwhile, the one with
+ * the smaller ID first, so that transfers in opposite directions cannot deadlock, and no musician is ever in neither
+ * ensemble.
+ */
+class TransferMusiciansCommand implements Command
+{
+    private final Assignment assignment;
+    private Assignment.State state;
+    private final EnsembleStore ensembleStore;
+    private final Ensemble source;
+    private final ChangeListener changeListener;
+    private Ensemble target;
+    /** The musicians as in the source ensemble. */
+    private Musician[] sourceMusicians;
+    /** The musicians as in the target ensemble, with their mapped roles. */
+    private Musician[] targetMusicians;
+
+    TransferMusiciansCommand(Assignment assignment, EnsembleStore ensembleStore, String activeEnsembleId,
+                             ChangeListener changeListener)
+    {
+        this.assignment = assignment;
+        this.ensembleStore = ensembleStore;
+        source = Objects.nonNull(activeEnsembleId) ? ensembleStore.get(activeEnsembleId) : null;
+        this.changeListener = changeListener;
+    }
+
+    @Override
+    public boolean execute()
+    {
+        if (Objects.isNull(source))
+        {
+            assignment.err.println("No ensemble to transfer from.");
+            return false;
+        }
+
+        assignment.out.print("Target ensemble ID: ");
+        var targetId = assignment.reader.nextLine().trim();
+        if (targetId.isEmpty())
+        {
+            assignment.err.println("Ensemble ID cannot be empty!");
+            return false;
+        }
+        target = ensembleStore.get(targetId);
+        if (Objects.isNull(target))
+        {
+            assignment.err.println("Ensemble ID does not exist!");
+            return false;
+        }
+        if (target == source)
+        {
+            assignment.err.println("Cannot transfer to the same ensemble!");
+            return false;
+        }
+
+        assignment.out.print("Musician IDs, separated by comma: ");
+        var musicianIds = new LinkedHashSet<String>();
+        assignment.reader.nextFields(',', musicianIds);
+        if (musicianIds.isEmpty())
+        {
+            assignment.err.println("Musician ID cannot be empty!");
+            return false;
+        }
+
+        sourceMusicians = new Musician[musicianIds.size()];
+        var index = 0;
+        for (var musicianId : musicianIds)
+        {
+            sourceMusicians[index] = findMusician(source, musicianId);
+            if (Objects.isNull(sourceMusicians[index++]))
+            {
+                assignment.err.printf("Musician ID does not exist: %s!%n", musicianId);
+                return false;
+            }
+            if (Objects.nonNull(findMusician(target, musicianId)))
+            {
+                assignment.err.printf("Musician ID already exist in the target ensemble: %s!%n", musicianId);
+                return false;
+            }
+        }
+
+        // Map the roles present, asking once for each role without a match in the target type
+        var sourceType = source.getType();
+        var targetType = target.getType();
+        var roleMap = new HashMap<Integer, Integer>();
+        for (var musician : sourceMusicians)
+        {
+            if (roleMap.containsKey(musician.getRole())) { continue; }
+
+            var roleName = sourceType.getRoleName(musician.getRole());
+            var role = targetType.findRole(roleName);
+            if (role < 0)
+            {
+                assignment.out.printf("The %s(s) need a role in %s.%n", roleName, target.getName());
+                assignment.out.print(targetType.getRolePrompt());
+                try
+                {
+                    role = assignment.reader.nextInt();
+                }
+                catch (NumberFormatException ex)
+                {
+                    role = -1;
+                }
+                if (!targetType.isValidRole(role))
+                {
+                    assignment.err.println("Invalid musician role!");
+                    return false;
+                }
+            }
+            roleMap.put(musician.getRole(), role);
+        }
+
+        targetMusicians = new Musician[sourceMusicians.length];
+        for (var i = 0; i < sourceMusicians.length; i++)
+        {
+            targetMusicians[i] = new Musician(sourceMusicians[i].getMID());
+            targetMusicians[i].setName(sourceMusicians[i].getName());
+            targetMusicians[i].setRole(roleMap.get(sourceMusicians[i].getRole()));
+        }
+
+        if (!move(source, sourceMusicians, target, targetMusicians))
+        {
+            assignment.err.println("Musicians were changed meanwhile!");
+            return false;
+        }
+        state = new Assignment.State(assignment);
+
+        assignment.out.printf("%d musician(s) are transferred to %s.%n", sourceMusicians.length, target.getName());
+        return true;
+    }
+
+    @Override
+    public void undo()
+    {
+        if (!move(target, targetMusicians, source, sourceMusicians))
+        {
+            assignment.err.println("Musicians were changed meanwhile!");
+            return;
+        }
+        state.restore();
+    }
+
+    @Override
+    public void redo()
+    {
+        if (!move(source, sourceMusicians, target, targetMusicians))
+        {
+            assignment.err.println("Musicians were changed meanwhile!");
+            return;
+        }
+        assignment.setActiveEnsemble(source);
+    }
+
+    /**
+     * As the transfer is only recorded in the history of the source ensemble, the target may have been removed or
+     * changed since, by the commands of its own history.
+     */
+    @Override
+    public boolean canUndo()
+    {
+        return canMove(target, targetMusicians, source, sourceMusicians);
+    }
+
+    @Override
+    public boolean canRedo()
+    {
+        return canMove(source, sourceMusicians, target, targetMusicians);
+    }
+
+    /**
+     * Moves musicians between two ensembles, checking first that they can still be moved. Like every command, it runs
+     * under the command lock, so nothing else changes the ensembles meanwhile.
+     *
+     * @return Whether the musicians are moved.
+     */
+    private boolean move(Ensemble from, Musician[] fromMusicians, Ensemble to, Musician[] toMusicians)
+    {
+        if (!canMove(from, fromMusicians, to, toMusicians)) { return false; }
+
+        for (var i = 0; i < fromMusicians.length; i++)
+        {
+            from.dropMusician(findMusician(from, fromMusicians[i].getMID()));
+            changeListener.changed(Change.dropMusician(from, fromMusicians[i]));
+            to.addMusician(toMusicians[i]);
+            changeListener.changed(Change.addMusician(to, toMusicians[i]));
+        }
+        return true;
+    }
+
+    /**
+     * Checks that both ensembles are still the ones in the store, not removed nor replaced by another ensemble with the
+     * same ID, and that all the musicians are still to be moved.
+     */
+    private boolean canMove(Ensemble from, Musician[] fromMusicians, Ensemble to, Musician[] toMusicians)
+    {
+        if ((ensembleStore.get(from.getEnsembleID()) != from) || (ensembleStore.get(to.getEnsembleID()) != to))
+        {
+            return false;
+        }
+
+        for (var i = 0; i < fromMusicians.length; i++)
+        {
+            if (Objects.isNull(findMusician(from, fromMusicians[i].getMID()))
+                    || Objects.nonNull(findMusician(to, toMusicians[i].getMID())))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Musician findMusician(Ensemble ensemble, String musicianId)
+    {
+        for (var musician : ensemble.readMusicians())
+        {
+            if (Objects.equals(musician.getMID(), musicianId)) { return ensemble.keep(musician); }
+        }
+
+        return null;
+    }
+
+    @Override
+    public String getEnsembleId()
+    {
+        return source.getEnsembleID();
+    }
+
+    @Override
+    public String toString()
+    {
+        var musicianIds = new StringJoiner(", ");
+        for (var musician : sourceMusicians) { musicianIds.add(musician.getMID()); }
+
+        return String.format("Transfer musician(s): %s from %s to %s", musicianIds, source.getEnsembleID(), target.getEnsembleID());
+    }
+}
+
+/**
+ * Command to show the current ensemble. Stateless, so a single instance is shared.
+ */
 class ShowEnsembleCommand implements Command
 {
-    private final Ensemble ensemble;
+    private final Assignment assignment;
+    private final EnsembleStore ensembleStore;
 
-    ShowEnsembleCommand(Map<String, Ensemble> ensembleMap, String activeEnsembleId)
+    ShowEnsembleCommand(Assignment assignment, EnsembleStore ensembleStore)
     {
-        ensemble = Objects.nonNull(activeEnsembleId) ? ensembleMap.get(activeEnsembleId) : null;
+        this.assignment = assignment;
+        this.ensembleStore = ensembleStore;
     }
 
     @Override
     public boolean execute()
     {
+        var activeEnsembleId = assignment.getActiveEnsembleId();
+        var ensemble = Objects.nonNull(activeEnsembleId) ? ensembleStore.get(activeEnsembleId) : null;
         if (Objects.isNull(ensemble))
         {
-            System.err.println("Nothing to show.");
+            assignment.err.println("Nothing to show.");
             return false;
         }
 
-        ensemble.showEnsemble();
+        ensemble.showEnsemble(assignment.out);
         return false;
     }
 }
 
+/**
+ * Command to show the current ensemble as it was at a past version or time.
+ */
+class ShowEnsembleAtCommand implements Command
+{
+    private final Assignment assignment;
+    private final EnsembleVersions ensembleVersions;
+    private final String activeEnsembleId;
+
+    ShowEnsembleAtCommand(Assignment assignment, EnsembleVersions ensembleVersions, String activeEnsembleId)
+    {
+        this.assignment = assignment;
+        this.ensembleVersions = ensembleVersions;
+        this.activeEnsembleId = activeEnsembleId;
+    }
+
+    @Override
+    public boolean execute()
+    {
+        if (Objects.isNull(activeEnsembleId))
+        {
+            assignment.err.println("Nothing to show.");
+            return false;
+        }
+
+        var oldestVersion = ensembleVersions.getOldestVersion();
+        var latestVersion = ensembleVersions.getVersion();
+        assignment.out.printf("Version [%d-%d] or time (e.g. 2026-10-13T09:00): ", oldestVersion, latestVersion);
+        var input = assignment.reader.nextLine().trim();
+        if (input.isEmpty())
+        {
+            assignment.err.println("Version or time cannot be empty!");
+            return false;
+        }
+
+        long version;
+        Instant time = null;
+        if (input.chars().allMatch(Character::isDigit))
+        {
+            try
+            {
+                version = Long.parseLong(input);
+            }
+            catch (NumberFormatException ex)
+            {
+                version = Long.MAX_VALUE;
+            }
+            if (version > latestVersion)
+            {
+                assignment.err.println("Invalid version!");
+                return false;
+            }
+        }
+        else
+        {
+            try
+            {
+                time = LocalDateTime.parse(input).atZone(ZoneId.systemDefault()).toInstant();
+            }
+            catch (DateTimeParseException ex)
+            {
+                assignment.err.println("Invalid version or time!");
+                return false;
+            }
+            version = ensembleVersions.findVersion(time);
+        }
+
+        // A time before startup is answered as such, any other version older than the ones kept is not
+        if (((version >= 0) || (oldestVersion > 0)) && (version < ensembleVersions.getOldestVersion(activeEnsembleId)))
+        {
+            assignment.err.printf("Version is no longer kept, only the latest %d are!%n", EnsembleVersions.CAPACITY);
+            return false;
+        }
+
+        var snapshot = (version >= 0) ? ensembleVersions.get(activeEnsembleId, version) : null;
+        if (Objects.isNull(snapshot))
+        {
+            assignment.err.println("Ensemble did not exist at that time!");
+            return false;
+        }
+
+        if (Objects.isNull(time))
+        {
+            assignment.out.printf("As of version %d:%n", version);
+        }
+        else
+        {
+            assignment.out.printf("As of version %d, made at %s:%n", version,
+                    LocalDateTime.ofInstant(ensembleVersions.getTimestamp(version), ZoneId.systemDefault())
+                            .truncatedTo(ChronoUnit.SECONDS));
+        }
+        Ensemble.showEnsemble(assignment.out, snapshot.type(), activeEnsembleId, snapshot.name(),
+                snapshot.musicians().values());
+        return false;
+    }
+}
+
+/**
+ * Command to list all the ensembles. Stateless, so a single instance is shared.
+ */
 @SuppressWarnings("ClassCanBeRecord")
 class DisplayAllEnsemblesCommand implements Command
 {
-    private final Map<String, Ensemble> ensembleMap;
+    private final Assignment assignment;
+    private final EnsembleStore ensembleStore;
 
-    DisplayAllEnsemblesCommand(Map<String, Ensemble> ensembleMap)
+    DisplayAllEnsemblesCommand(Assignment assignment, EnsembleStore ensembleStore)
     {
-        this.ensembleMap = ensembleMap;
+        this.assignment = assignment;
+        this.ensembleStore = ensembleStore;
     }
 
     @Override
     public boolean execute()
     {
-        if (ensembleMap.isEmpty())
+        if (ensembleStore.isEmpty())
         {
-            System.err.println("No ensembles to display!");
+            assignment.err.println("No ensembles to display!");
             return false;
         }
 
-        for (var ensemble : ensembleMap.values())
+        for (var ensemble : ensembleStore.summaries())
         {
-            System.out.printf("- %s: %s (ID: %s)%n", ensemble.getClass().getSimpleName(), ensemble.getName(), ensemble.getEnsembleID());
+            // Printed piece by piece rather than formatted, so that listing leaves no garbage
+            assignment.out.print("- ");
+            assignment.out.print(ensemble.getType().getLabel());
+            assignment.out.print(": ");
+            assignment.out.print(ensemble.getName());
+            assignment.out.print(" (ID: ");
+            assignment.out.print(ensemble.getEnsembleID());
+            assignment.out.println(')');
         }
 
         return false;
     }
 }
 
+@SuppressWarnings("ClassCanBeRecord")
+class ReportCommand implements Command
+{
+    private final Assignment assignment;
+    private final EnsembleStore ensembleStore;
+
+    ReportCommand(Assignment assignment, EnsembleStore ensembleStore)
+    {
+        this.assignment = assignment;
+        this.ensembleStore = ensembleStore;
+    }
+
+    @Override
+    public boolean execute()
+    {
+        if (ensembleStore.isEmpty())
+        {
+            assignment.err.println("No ensembles to report!");
+            return false;
+        }
+
+        // Only the IDs are sorted, the ensembles being loaded from the store as they are rendered
+        var ensembleIds = new ArrayList<String>();
+        for (var summary : ensembleStore.summaries())
+        {
+            ensembleIds.add(summary.getEnsembleID());
+        }
+        ensembleIds.sort(null);
+
+        new ReportRenderer(ForkJoinPool.commonPool()).render(
+                () -> ensembleIds.stream().map(ensembleStore::get).filter(Objects::nonNull).iterator(), assignment.out);
+        return false;
+    }
+}
+
 class ChangeEnsembleNameCommand implements Command
 {
-    private final Assignment.State state = new Assignment.State();
+    private final Assignment assignment;
+    private Assignment.State state;
     private final Ensemble ensemble;
+    private final ChangeListener changeListener;
     private Ensemble.Memento memento;
     private String ensembleName;
 
-    ChangeEnsembleNameCommand(Map<String, Ensemble> ensembleMap, String activeEnsembleId)
+    ChangeEnsembleNameCommand(Assignment assignment, EnsembleStore ensembleStore, String activeEnsembleId,
+                              ChangeListener changeListener)
     {
-        ensemble = Objects.nonNull(activeEnsembleId) ? ensembleMap.get(activeEnsembleId) : null;
+        this.assignment = assignment;
+        ensemble = Objects.nonNull(activeEnsembleId) ? ensembleStore.get(activeEnsembleId) : null;
+        this.changeListener = changeListener;
     }
 
     @Override
@@ -460,22 +1119,23 @@ class ChangeEnsembleNameCommand implements Command
     {
         if (Objects.isNull(ensemble))
         {
-            System.err.println("No ensemble to rename.");
+            assignment.err.println("No ensemble to rename.");
             return false;
         }
         
-        memento = new Ensemble.Memento(ensemble);
-
-        System.out.print("New ensemble name: ");
-        ensembleName = Assignment.scanner.nextLine().trim();
+        assignment.out.print("New ensemble name: ");
+        ensembleName = assignment.reader.nextLine().trim();
         if (ensembleName.isEmpty())
         {
-            System.err.println("Ensemble name cannot be empty!");
+            assignment.err.println("Ensemble name cannot be empty!");
             return false;
         }
 
+        state = new Assignment.State(assignment);
+        memento = new Ensemble.Memento(ensemble);
         ensemble.setName(ensembleName);
-        System.out.println("Ensemble name is updated.");
+        changeListener.changed(Change.renameEnsemble(ensemble));
+        assignment.out.println("Ensemble name is updated.");
         return true;
     }
 
@@ -483,6 +1143,7 @@ class ChangeEnsembleNameCommand implements Command
     public void undo()
     {
         memento.restore();
+        changeListener.changed(Change.renameEnsemble(ensemble));
         state.restore();
     }
 
@@ -490,7 +1151,14 @@ class ChangeEnsembleNameCommand implements Command
     public void redo()
     {
         ensemble.setName(ensembleName);
-        Assignment.setActiveEnsemble(ensemble);
+        changeListener.changed(Change.renameEnsemble(ensemble));
+        assignment.setActiveEnsemble(ensemble);
+    }
+
+    @Override
+    public String getEnsembleId()
+    {
+        return ensemble.getEnsembleID();
     }
 
     @Override
@@ -500,104 +1168,309 @@ class ChangeEnsembleNameCommand implements Command
     }
 }
 
-@SuppressWarnings("ClassCanBeRecord")
+class ExportEnsemblesCommand implements Command
+{
+    private final Assignment assignment;
+    private final EnsembleStore ensembleStore;
+    private final Ensemble ensemble;
+
+    ExportEnsemblesCommand(Assignment assignment, EnsembleStore ensembleStore, String activeEnsembleId)
+    {
+        this.assignment = assignment;
+        this.ensembleStore = ensembleStore;
+        ensemble = Objects.nonNull(activeEnsembleId) ? ensembleStore.get(activeEnsembleId) : null;
+    }
+
+    @Override
+    public boolean execute()
+    {
+        assignment.out.print("Export scope [e = current ensemble / a = all ensembles]: ");
+        var scope = assignment.reader.nextLine().trim().toLowerCase();
+        if (scope.isEmpty())
+        {
+            assignment.err.println("Export scope cannot be empty!");
+            return false;
+        }
+
+        Iterable<Ensemble> ensembles;
+        switch (scope)
+        {
+            case "e" ->
+            {
+                if (Objects.isNull(ensemble))
+                {
+                    assignment.err.println("No ensemble to export.");
+                    return false;
+                }
+                ensembles = List.of(ensemble);
+            }
+            case "a" ->
+            {
+                if (ensembleStore.isEmpty())
+                {
+                    assignment.err.println("No ensembles to export!");
+                    return false;
+                }
+                ensembles = ensembleStore.values();
+            }
+            default ->
+            {
+                assignment.err.println("Invalid export scope!");
+                return false;
+            }
+        }
+
+        assignment.out.print("Export format [c = CSV / j = JSON]: ");
+        var format = assignment.reader.nextLine().trim().toLowerCase();
+        if (format.isEmpty())
+        {
+            assignment.err.println("Export format cannot be empty!");
+            return false;
+        }
+        else if (!format.equals("c") && !format.equals("j"))
+        {
+            assignment.err.println("Invalid export format!");
+            return false;
+        }
+
+        assignment.out.print("File path: ");
+        var path = assignment.reader.nextLine().trim();
+        if (path.isEmpty())
+        {
+            assignment.err.println("File path cannot be empty!");
+            return false;
+        }
+
+        var count = 0;
+        try (var exporter = EnsembleExporter.create(format, Path.of(path)))
+        {
+            for (var ensemble : ensembles)
+            {
+                exporter.export(ensemble);
+                count++;
+            }
+        }
+        catch (IOException | InvalidPathException ex)
+        {
+            assignment.err.printf("Failed to export: %s%n", ex.getMessage());
+            return false;
+        }
+
+        assignment.out.printf("%d ensemble(s) are exported to %s.%n", count, path);
+        return false;
+    }
+}
+
+class WatchCommand implements Command
+{
+    private final Assignment assignment;
+    private final ChangeWatcher changeWatcher;
+    private final String activeEnsembleId;
+
+    WatchCommand(Assignment assignment, ChangeWatcher changeWatcher, String activeEnsembleId)
+    {
+        this.assignment = assignment;
+        this.changeWatcher = changeWatcher;
+        this.activeEnsembleId = activeEnsembleId;
+    }
+
+    @Override
+    public boolean execute()
+    {
+        if (Objects.isNull(activeEnsembleId))
+        {
+            assignment.err.println("No ensemble to watch.");
+            return false;
+        }
+
+        if (changeWatcher.toggle(activeEnsembleId))
+        {
+            assignment.out.printf("Watching the changes of ensemble %s.%n", activeEnsembleId);
+        }
+        else
+        {
+            assignment.out.printf("Stopped watching the changes of ensemble %s.%n", activeEnsembleId);
+        }
+
+        return false;
+    }
+}
+
+/**
+ * Command to undo the last command of the current history. Stateless, so a single instance is shared.
+ */
 class UndoCommand implements Command
 {
-    private final Stack<Command> undoStack;
-    private final Stack<Command> redoStack;
+    private final Assignment assignment;
+    private final Histories histories;
 
-    UndoCommand(Stack<Command> undoStack, Stack<Command> redoStack)
+    UndoCommand(Assignment assignment, Histories histories)
     {
-        this.undoStack = undoStack;
-        this.redoStack = redoStack;
+        this.assignment = assignment;
+        this.histories = histories;
     }
 
     @Override
     public boolean execute()
     {
-        if (undoStack.isEmpty())
+        var history = histories.get(assignment.getActiveEnsembleId());
+        if (Objects.isNull(history))
         {
-            System.err.println("Nothing to undo.");
+            assignment.err.println("Nothing to undo.");
             return false;
         }
 
-        var command = undoStack.pop();
-        System.out.printf("Command is undone: %s%n", command);
-        command.undo();
-        redoStack.push(command);
+        synchronized (history)
+        {
+            if (history.undoStack.isEmpty())
+            {
+                assignment.err.println("Nothing to undo.");
+                return false;
+            }
+
+            var command = history.undoStack.peek();
+            if (!command.canUndo())
+            {
+                assignment.err.printf("Cannot undo, the ensembles were changed meanwhile: %s!%n", command);
+                return false;
+            }
+
+            history.undoStack.pop();
+            assignment.out.printf("Command is undone: %s%n", command);
+            histories.log("Undone", command);
+            command.undo();
+            history.redoStack.push(command);
+        }
         return false;
     }
 }
 
-@SuppressWarnings("ClassCanBeRecord")
+/**
+ * Command to redo the last command undone of the current history, or in the per-ensemble mode, when there is none, the
+ * creation of the ensemble undone last. Stateless, so a single instance is shared.
+ */
 class RedoCommand implements Command
 {
-    private final Stack<Command> undoStack;
-    private final Stack<Command> redoStack;
+    private final Assignment assignment;
+    private final Histories histories;
 
-    RedoCommand(Stack<Command> undoStack, Stack<Command> redoStack)
+    RedoCommand(Assignment assignment, Histories histories)
     {
-        this.undoStack = undoStack;
-        this.redoStack = redoStack;
+        this.assignment = assignment;
+        this.histories = histories;
     }
 
     @Override
     public boolean execute()
     {
-        if (redoStack.isEmpty())
+        // In the per-ensemble mode, fall back to the creation of an ensemble undone last
+        var history = histories.getRedoHistory(assignment.getActiveEnsembleId());
+        if (Objects.isNull(history))
         {
-            System.err.println("Nothing to redo.");
+            assignment.err.println("Nothing to redo.");
             return false;
         }
 
-        var command = redoStack.pop();
-        System.out.printf("Command is redone: %s%n", command);
-        command.redo();
-        undoStack.push(command);
+        synchronized (history)
+        {
+            if (history.redoStack.isEmpty())
+            {
+                assignment.err.println("Nothing to redo.");
+                return false;
+            }
+
+            var command = history.redoStack.peek();
+            if (!command.canRedo())
+            {
+                assignment.err.printf("Cannot redo, the ensembles were changed meanwhile: %s!%n", command);
+                return false;
+            }
+
+            history.redoStack.pop();
+            assignment.out.printf("Command is redone: %s%n", command);
+            histories.log("Redone", command);
+            command.redo();
+            history.undoStack.push(command);
+        }
         return false;
     }
 }
 
-@SuppressWarnings("ClassCanBeRecord")
+/**
+ * Command to list the undo and redo stacks of the current history. Stateless, so a single instance is shared.
+ */
 class ListUndoRedoCommand implements Command
 {
-    private final Stack<Command> undoStack;
-    private final Stack<Command> redoStack;
+    private final Assignment assignment;
+    private final Histories histories;
 
-    ListUndoRedoCommand(Stack<Command> undoStack, Stack<Command> redoStack)
+    ListUndoRedoCommand(Assignment assignment, Histories histories)
     {
-        this.undoStack = undoStack;
-        this.redoStack = redoStack;
+        this.assignment = assignment;
+        this.histories = histories;
     }
 
     @Override
     public boolean execute()
     {
-        System.out.println();
-        System.out.println("Undo List");
-        if (undoStack.isEmpty())
+        var history = Objects.requireNonNullElseGet(histories.get(assignment.getActiveEnsembleId()), History::new);
+        synchronized (history)
+        {
+            printCommands("Undo List", history.undoStack);
+            printCommands("Redo List", history.redoStack);
+        }
+
+        return false;
+    }
+
+    private void printCommands(String heading, Stack<Command> stack)
+    {
+        assignment.out.println();
+        assignment.out.println(heading);
+        if (stack.isEmpty())
         {
-            System.out.println("  EMPTY");
+            assignment.out.println("  EMPTY");
         }
         else
         {
-            for (var command : undoStack)
+            for (var command : stack)
             {
-                System.out.printf("- %s%n", command);
+                assignment.out.print("- ");
+                assignment.out.println(command);
             }
         }
+    }
+}
 
-        System.out.println();
-        System.out.println("Redo List");
-        if (redoStack.isEmpty())
+/**
+ * Command to show the global log of the commands executed, undone and redone.
+ */
+class ShowHistoryLogCommand implements Command
+{
+    private final Assignment assignment;
+    private final Histories histories;
+
+    ShowHistoryLogCommand(Assignment assignment, Histories histories)
+    {
+        this.assignment = assignment;
+        this.histories = histories;
+    }
+
+    @Override
+    public boolean execute()
+    {
+        var log = histories.getLog();
+        assignment.out.println();
+        assignment.out.println("History Log");
+        if (log.isEmpty())
         {
-            System.out.println("  EMPTY");
+            assignment.out.println("  EMPTY");
         }
         else
         {
-            for (var command : redoStack)
+            for (var entry : log)
             {
-                System.out.printf("- %s%n", command);
+                assignment.out.printf("- %s%n", entry);
             }
         }
 
@@ -610,10 +1483,16 @@ class ListUndoRedoCommand implements Command
  */
 class ExitCommand implements Command
 {
+    private final Assignment assignment;
+
+    ExitCommand(Assignment assignment)
+    {
+        this.assignment = assignment;
+    }
     @Override
     public boolean execute()
     {
-        System.exit(0);
+        assignment.exit();
         return false;
     }
 }
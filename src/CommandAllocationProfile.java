@@ -0,0 +1,68 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+
+/**
+ * Profiles the heap allocated by the console for each command entered, the menu, prompt and dispatch included, with
+ * the output discarded. The read commands are expected to leave no garbage once warmed up.
+ * <p>
+ * Usage: {@code java CommandAllocationProfile [commands per profile]}.
+ */
+class CommandAllocationProfile
+{
+    /** The commands profiled, each entered repeatedly. Redo fails, as there is nothing to redo. */
+    private static final String[] COMMANDS = {"se", "sa", "l", "r"};
+
+    public static void main(String[] args) throws IOException
+    {
+        var count = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+
+        var console = new ConsoleWriter(OutputStream.nullOutputStream(), true);
+        var assignment = new Assignment(new MemoryEnsembleStore(), EnsembleRegistry.load(Path.of("ensembles.properties")),
+                new Histories(false), new ConsoleReader(""), console, console);
+        assignment.reader = new ConsoleReader("""
+                c
+                j
+                E102
+                BLUE NOTE
+                c
+                o
+                E001
+                SYO
+                a
+                m001, Chole Chua
+                1
+                a
+                m002, Mischa Maisky
+                2
+                """);
+        assignment.run();
+
+        System.out.printf("%-4s %15s %15s%n", "", "bytes/command", "warm-up");
+        for (var command : COMMANDS)
+        {
+            var input = (command + "\n").repeat(count);
+            var warmUpBytes = profile(assignment, input);
+            var bytes = profile(assignment, input);
+            System.out.printf("%-4s %15.3f %15.3f%n", command, (double) bytes / count, (double) warmUpBytes / count);
+        }
+    }
+
+    /**
+     * Runs the console over the input, returning the bytes allocated.
+     */
+    private static long profile(Assignment assignment, String input)
+    {
+        var reader = new ConsoleReader(input);
+        assignment.reader = reader;
+        var bytes = allocatedBytes();
+        assignment.run();
+        return allocatedBytes() - bytes;
+    }
+
+    private static long allocatedBytes()
+    {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
@@ -1,84 +1,151 @@
-import java.util.Map;
-import java.util.Stack;
-
 /**
- * A collection of {@link Command} factory methods.
+ * A collection of {@link Command} factory methods, with the shared instances of the stateless commands.
  */
 @SuppressWarnings("ClassCanBeRecord")
 class CommandFactories
 {
-    /** A mapping of {@link Ensemble} with its ID. */
-    private final Map<String, Ensemble> ensembleMap;
+    /** The instance of the system the commands run in. */
+    private final Assignment assignment;
+
+    /** The store of {@link Ensemble}s. */
+    private final EnsembleStore ensembleStore;
+
+    /** The same store, copying the ensembles into the versions before the commands change them. */
+    private final EnsembleStore trackedEnsembleStore;
+
+    /** The registry of the ensemble types. */
+    private final EnsembleRegistry ensembleRegistry;
+
+    /** The past versions of the ensembles. */
+    private final EnsembleVersions ensembleVersions;
+
+    /** The undo/redo histories. */
+    private final Histories histories;
+
+    /** The listener to the changes made by the commands. */
+    private final ChangeListener changeListener;
+
+    /** The watcher tailing the changes of an ensemble. */
+    private final ChangeWatcher changeWatcher;
 
-    /** The undo stack. */
-    private final Stack<Command> undoStack;
-    /** The redo stack. */
-    private final Stack<Command> redoStack;
+    // The stateless commands, shared rather than created for each use
+    private final ShowEnsembleCommand showEnsembleCommand;
+    private final DisplayAllEnsemblesCommand displayAllEnsemblesCommand;
+    private final UndoCommand undoCommand;
+    private final RedoCommand redoCommand;
+    private final ListUndoRedoCommand listUndoRedoCommand;
 
-    CommandFactories(Map<String, Ensemble> ensembleMap, Stack<Command> undoStack, Stack<Command> redoStack)
+    CommandFactories(Assignment assignment, EnsembleStore ensembleStore, EnsembleRegistry ensembleRegistry,
+                     EnsembleVersions ensembleVersions, Histories histories, ChangeListener changeListener, ChangeWatcher changeWatcher)
     {
-        this.ensembleMap = ensembleMap;
-        this.undoStack = undoStack;
-        this.redoStack = redoStack;
+        this.assignment = assignment;
+        this.ensembleStore = ensembleStore;
+        trackedEnsembleStore = ensembleVersions.track(ensembleStore);
+        this.ensembleRegistry = ensembleRegistry;
+        this.ensembleVersions = ensembleVersions;
+        this.histories = histories;
+        this.changeListener = changeListener;
+        this.changeWatcher = changeWatcher;
+
+        showEnsembleCommand = new ShowEnsembleCommand(assignment, ensembleStore);
+        displayAllEnsemblesCommand = new DisplayAllEnsemblesCommand(assignment, ensembleStore);
+        undoCommand = new UndoCommand(assignment, histories);
+        redoCommand = new RedoCommand(assignment, histories);
+        listUndoRedoCommand = new ListUndoRedoCommand(assignment, histories);
     }
 
     CreateEnsembleCommand createCreateEnsembleCommand()
     {
-        return new CreateEnsembleCommand(ensembleMap);
+        return new CreateEnsembleCommand(assignment, ensembleStore, ensembleRegistry, changeListener);
     }
 
     SetCurrentEnsembleCommand createSetCurrentEnsembleCommand()
     {
-        return new SetCurrentEnsembleCommand(ensembleMap);
+        return new SetCurrentEnsembleCommand(assignment, ensembleStore);
     }
 
     AddMusicianCommand createAddMusicianCommand(String activeEnsembleId)
     {
-        return new AddMusicianCommand(ensembleMap, activeEnsembleId);
+        return new AddMusicianCommand(assignment, trackedEnsembleStore, activeEnsembleId, changeListener);
     }
 
     ModifyMusicianInstrumentCommand createModifyMusicianInstrumentCommand(String activeEnsembleId)
     {
-        return new ModifyMusicianInstrumentCommand(ensembleMap, activeEnsembleId);
+        return new ModifyMusicianInstrumentCommand(assignment, trackedEnsembleStore, activeEnsembleId, changeListener);
+    }
+
+    BulkModifyMusicianInstrumentCommand createBulkModifyMusicianInstrumentCommand(String activeEnsembleId)
+    {
+        return new BulkModifyMusicianInstrumentCommand(assignment, trackedEnsembleStore, activeEnsembleId, changeListener);
     }
 
     DeleteMusicianCommand createDeleteMusicianCommand(String activeEnsembleId)
     {
-        return new DeleteMusicianCommand(ensembleMap, activeEnsembleId);
+        return new DeleteMusicianCommand(assignment, trackedEnsembleStore, activeEnsembleId, changeListener);
+    }
+
+    TransferMusiciansCommand createTransferMusiciansCommand(String activeEnsembleId)
+    {
+        return new TransferMusiciansCommand(assignment, trackedEnsembleStore, activeEnsembleId, changeListener);
     }
 
-    ShowEnsembleCommand createShowEnsembleCommand(String activeEnsembleId)
+    ShowEnsembleCommand getShowEnsembleCommand()
     {
-        return new ShowEnsembleCommand(ensembleMap, activeEnsembleId);
+        return showEnsembleCommand;
     }
 
-    DisplayAllEnsemblesCommand createDisplayAllEnsemblesCommand()
+    ShowEnsembleAtCommand createShowEnsembleAtCommand(String activeEnsembleId)
     {
-        return new DisplayAllEnsemblesCommand(ensembleMap);
+        return new ShowEnsembleAtCommand(assignment, ensembleVersions, activeEnsembleId);
+    }
+
+    DisplayAllEnsemblesCommand getDisplayAllEnsemblesCommand()
+    {
+        return displayAllEnsemblesCommand;
+    }
+
+    ReportCommand createReportCommand()
+    {
+        return new ReportCommand(assignment, ensembleStore);
     }
 
     ChangeEnsembleNameCommand createChangeEnsembleNameCommand(String activeEnsembleId)
     {
-        return new ChangeEnsembleNameCommand(ensembleMap, activeEnsembleId);
+        return new ChangeEnsembleNameCommand(assignment, trackedEnsembleStore, activeEnsembleId, changeListener);
+    }
+
+    ExportEnsemblesCommand createExportEnsemblesCommand(String activeEnsembleId)
+    {
+        return new ExportEnsemblesCommand(assignment, ensembleStore, activeEnsembleId);
+    }
+
+    WatchCommand createWatchCommand(String activeEnsembleId)
+    {
+        return new WatchCommand(assignment, changeWatcher, activeEnsembleId);
+    }
+
+    UndoCommand getUndoCommand()
+    {
+        return undoCommand;
     }
 
-    UndoCommand createUndoCommand()
+    RedoCommand getRedoCommand()
     {
-        return new UndoCommand(undoStack, redoStack);
+        return redoCommand;
     }
 
-    RedoCommand createRedoCommand()
+    ListUndoRedoCommand getListUndoRedoCommand()
     {
-        return new RedoCommand(undoStack, redoStack);
+        return listUndoRedoCommand;
     }
 
-    ListUndoRedoCommand createListUndoRedoCommand()
+    ShowHistoryLogCommand createShowHistoryLogCommand()
     {
-        return new ListUndoRedoCommand(undoStack, redoStack);
+        return new ShowHistoryLogCommand(assignment, histories);
     }
 
     ExitCommand createExitCommand()
     {
-        return new ExitCommand();
+        return new ExitCommand(assignment);
     }
 }
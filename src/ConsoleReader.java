@@ -0,0 +1,346 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the console input line by line, in place of a {@link java.util.Scanner}.
+ * <p>
+ * The UTF-8 bytes are decoded straight into a reusable line buffer, without regular expressions, and the integers and
+ * the comma-separated fields are parsed from that buffer, so that only the strings returned are allocated. Lines end
+ * with {@code \n}, {@code \r\n} or {@code \r}. Like a scanner, a failure to read is taken as the end of the input.
+ */
+final class ConsoleReader
+{
+    private static final int BUFFER_SIZE = 8192;
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private final InputStream in;
+    private final byte[] bytes = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    /** The current line, valid up to {@link #length}. */
+    private char[] line = new char[128];
+    private int length = 0;
+    /** Whether a line has been read ahead by {@link #hasNextLine()}. */
+    private boolean isLineRead = false;
+    /** Whether the last line ended with {@code \r}, so that a following {@code \n} belongs to it. */
+    private boolean isLineFeedSkipped = false;
+
+    /**
+     * @param in The input, read as needed.
+     */
+    ConsoleReader(InputStream in)
+    {
+        this.in = in;
+    }
+
+    /**
+     * @param input The whole input.
+     */
+    ConsoleReader(String input)
+    {
+        this(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Checks whether there is another line, blocking until there is some input.
+     */
+    boolean hasNextLine()
+    {
+        if (!isLineRead) { isLineRead = readLine(); }
+        return isLineRead;
+    }
+
+    /**
+     * Reads the next line, without its terminator.
+     *
+     * @throws NoSuchElementException If there is no more line.
+     */
+    String nextLine()
+    {
+        nextLineInPlace();
+        return new String(line, 0, length);
+    }
+
+    /**
+     * Reads the next line, returning one of the given keywords instead of a copy if it is one of them, ignoring the
+     * case and the surrounding whitespace.
+     *
+     * @param keywords The keywords, in lower case.
+     * @throws NoSuchElementException If there is no more line.
+     */
+    String nextLine(String[] keywords)
+    {
+        nextLineInPlace();
+        var start = trimStart(0, length);
+        var end = trimEnd(start, length);
+        for (var keyword : keywords)
+        {
+            if (matches(keyword, start, end)) { return keyword; }
+        }
+
+        return new String(line, 0, length);
+    }
+
+    /**
+     * Reads the next line as a decimal integer, ignoring the surrounding whitespace.
+     *
+     * @throws NumberFormatException  If the line is not an integer.
+     * @throws NoSuchElementException If there is no more line.
+     */
+    int nextInt()
+    {
+        nextLineInPlace();
+        return parseInt(line, trimStart(0, length), trimEnd(0, length));
+    }
+
+    /**
+     * Reads the next line as a decimal integer, ignoring the surrounding whitespace, or a default for a blank line.
+     *
+     * @param blankValue The value of a blank line.
+     * @throws NumberFormatException  If the line is neither blank nor an integer.
+     * @throws NoSuchElementException If there is no more line.
+     */
+    int nextInt(int blankValue)
+    {
+        nextLineInPlace();
+        var start = trimStart(0, length);
+        var end = trimEnd(start, length);
+        return (start == end) ? blankValue : parseInt(line, start, end);
+    }
+
+    /**
+     * Reads the next line as fields, e.g. {@code "M001, Bob Dylan"}, each with the surrounding whitespace trimmed. The
+     * last field takes the rest of the line, separators included, like {@code String.split(",", fields.length)}.
+     *
+     * @param separator The separator of the fields.
+     * @param fields    The array to fill with the fields, the unused elements set to {@code null}.
+     * @return The number of fields, at most the array length.
+     * @throws NoSuchElementException If there is no more line.
+     */
+    int nextFields(char separator, String[] fields)
+    {
+        nextLineInPlace();
+        var count = 0;
+        var start = 0;
+        for (var i = 0; (i < length) && (count < fields.length - 1); i++)
+        {
+            if (line[i] == separator)
+            {
+                fields[count++] = trimmedString(start, i);
+                start = i + 1;
+            }
+        }
+        fields[count++] = trimmedString(start, length);
+
+        for (var i = count; i < fields.length; i++) { fields[i] = null; }
+        return count;
+    }
+
+    /**
+     * Reads the next line as any number of fields, e.g. {@code "m001, m002"}, each with the surrounding whitespace
+     * trimmed and the blank ones skipped.
+     *
+     * @param separator The separator of the fields.
+     * @param fields    The collection to add the fields to.
+     * @throws NoSuchElementException If there is no more line.
+     */
+    void nextFields(char separator, Collection<? super String> fields)
+    {
+        nextLineInPlace();
+        var start = 0;
+        for (var i = 0; i <= length; i++)
+        {
+            if ((i == length) || (line[i] == separator))
+            {
+                var fieldStart = trimStart(start, i);
+                var fieldEnd = trimEnd(fieldStart, i);
+                if (fieldStart < fieldEnd) { fields.add(new String(line, fieldStart, fieldEnd - fieldStart)); }
+                start = i + 1;
+            }
+        }
+    }
+
+    private void nextLineInPlace()
+    {
+        if (!hasNextLine()) { throw new NoSuchElementException("No line found"); }
+        isLineRead = false;
+    }
+
+    private boolean matches(String keyword, int start, int end)
+    {
+        if (keyword.length() != end - start) { return false; }
+
+        for (var i = 0; i < keyword.length(); i++)
+        {
+            if (Character.toLowerCase(line[start + i]) != keyword.charAt(i)) { return false; }
+        }
+        return true;
+    }
+
+    private String trimmedString(int start, int end)
+    {
+        start = trimStart(start, end);
+        return new String(line, start, trimEnd(start, end) - start);
+    }
+
+    private int trimStart(int start, int end)
+    {
+        while ((start < end) && (line[start] <= ' ')) { start++; }
+        return start;
+    }
+
+    private int trimEnd(int start, int end)
+    {
+        while ((end > start) && (line[end - 1] <= ' ')) { end--; }
+        return end;
+    }
+
+    /**
+     * Decodes the next line into the line buffer.
+     *
+     * @return Whether there was a line.
+     */
+    private boolean readLine()
+    {
+        length = 0;
+        var isAnyRead = false;
+        while ((position < limit) || fill())
+        {
+            var b = bytes[position++];
+            if (isLineFeedSkipped)
+            {
+                isLineFeedSkipped = false;
+                if (b == '\n') { continue; }
+            }
+
+            isAnyRead = true;
+            if (b == '\n') { return true; }
+            if (b == '\r')
+            {
+                isLineFeedSkipped = true;
+                return true;
+            }
+
+            if (b >= 0)
+            {
+                append((char) b);
+            }
+            else
+            {
+                decode(b & 0xFF);
+            }
+        }
+
+        return isAnyRead;
+    }
+
+    /**
+     * Decodes a multi-byte UTF-8 sequence from its leading byte, appending a replacement character if it is malformed.
+     */
+    private void decode(int lead)
+    {
+        int count;
+        int codePoint;
+        if ((lead & 0xE0) == 0xC0)
+        {
+            count = 1;
+            codePoint = lead & 0x1F;
+        }
+        else if ((lead & 0xF0) == 0xE0)
+        {
+            count = 2;
+            codePoint = lead & 0x0F;
+        }
+        else if ((lead & 0xF8) == 0xF0)
+        {
+            count = 3;
+            codePoint = lead & 0x07;
+        }
+        else
+        {
+            append(REPLACEMENT);
+            return;
+        }
+
+        for (var i = 0; i < count; i++)
+        {
+            if ((position == limit) && !fill()) { codePoint = -1; break; }
+
+            var b = bytes[position];
+            if ((b & 0xC0) != 0x80) { codePoint = -1; break; }
+            position++;
+            codePoint = (codePoint << 6) | (b & 0x3F);
+        }
+
+        if ((codePoint < 0) || (codePoint > Character.MAX_CODE_POINT))
+        {
+            append(REPLACEMENT);
+        }
+        else if (Character.isBmpCodePoint(codePoint))
+        {
+            append((char) codePoint);
+        }
+        else
+        {
+            append(Character.highSurrogate(codePoint));
+            append(Character.lowSurrogate(codePoint));
+        }
+    }
+
+    private void append(char c)
+    {
+        if (length == line.length)
+        {
+            var grown = new char[line.length * 2];
+            System.arraycopy(line, 0, grown, 0, length);
+            line = grown;
+        }
+        line[length++] = c;
+    }
+
+    private boolean fill()
+    {
+        try
+        {
+            position = 0;
+            limit = Math.max(0, in.read(bytes, 0, bytes.length));
+        }
+        catch (IOException ex)
+        {
+            limit = 0;
+        }
+
+        return limit > 0;
+    }
+
+    /**
+     * Parses a decimal integer with an optional sign, accumulating negatively so that {@link Integer#MIN_VALUE} fits.
+     */
+    private static int parseInt(char[] chars, int start, int end)
+    {
+        if (start == end) { throw new NumberFormatException("Blank input"); }
+
+        var isNegative = chars[start] == '-';
+        var i = (isNegative || (chars[start] == '+')) ? start + 1 : start;
+        if (i == end) { throw new NumberFormatException(new String(chars, start, end - start)); }
+
+        var min = isNegative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        var result = 0;
+        for (; i < end; i++)
+        {
+            var digit = chars[i] - '0';
+            if ((digit < 0) || (digit > 9) || (result < (min + digit) / 10))
+            {
+                throw new NumberFormatException(new String(chars, start, end - start));
+            }
+            result = result * 10 - digit;
+        }
+
+        return isNegative ? result : -result;
+    }
+}
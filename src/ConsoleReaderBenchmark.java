@@ -0,0 +1,81 @@
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+
+/**
+ * Measures reading piped console input of added musicians with a {@link Scanner}, as the commands used to, against a
+ * {@link ConsoleReader}.
+ * <p>
+ * Usage: {@code java ConsoleReaderBenchmark [musician count] [rounds]}.
+ */
+class ConsoleReaderBenchmark
+{
+    public static void main(String[] args)
+    {
+        var musicianCount = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+        var rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+        // The input of the add musician commands: the command, the ID and name, and the role
+        var script = new StringBuilder(musicianCount * 40);
+        for (var i = 0; i < musicianCount; i++)
+        {
+            script.append("a\n").append(String.format("M%08d, Musician Número %d%n", i, i)).append(1 + (i % 2)).append('\n');
+        }
+        var input = script.toString().getBytes(StandardCharsets.UTF_8);
+        System.out.printf("Input: %,d musicians, %,d lines, %,d KiB%n", musicianCount, musicianCount * 3, input.length / 1024);
+
+        for (var round = 1; round <= rounds; round++)
+        {
+            var bytes = allocatedBytes();
+            var start = System.nanoTime();
+            var checksum = readWithScanner(input);
+            report("Scanner", round, System.nanoTime() - start, allocatedBytes() - bytes, musicianCount, checksum);
+
+            bytes = allocatedBytes();
+            start = System.nanoTime();
+            checksum = readWithConsoleReader(input);
+            report("ConsoleReader", round, System.nanoTime() - start, allocatedBytes() - bytes, musicianCount, checksum);
+        }
+    }
+
+    private static long readWithScanner(byte[] input)
+    {
+        var scanner = new Scanner(new ByteArrayInputStream(input), StandardCharsets.UTF_8);
+        var checksum = 0L;
+        while (scanner.hasNextLine())
+        {
+            checksum += scanner.nextLine().length();
+            var inputs = scanner.nextLine().split(",", 2);
+            checksum += inputs[0].trim().length() + inputs[1].trim().length();
+            checksum += Integer.parseInt(scanner.nextLine());
+        }
+        return checksum;
+    }
+
+    private static long readWithConsoleReader(byte[] input)
+    {
+        var reader = new ConsoleReader(new ByteArrayInputStream(input));
+        var inputs = new String[2];
+        var checksum = 0L;
+        while (reader.hasNextLine())
+        {
+            checksum += reader.nextLine().length();
+            reader.nextFields(',', inputs);
+            checksum += inputs[0].length() + inputs[1].length();
+            checksum += reader.nextInt();
+        }
+        return checksum;
+    }
+
+    private static void report(String path, int round, long time, long bytes, int musicianCount, long checksum)
+    {
+        System.out.printf("Round %d, %-13s: %,6d ms, %,12.0f lines/s, %,5d bytes allocated/musician (checksum %d)%n",
+                round, path, time / 1_000_000, musicianCount * 3 / (time / 1e9), bytes / musicianCount, checksum);
+    }
+
+    private static long allocatedBytes()
+    {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
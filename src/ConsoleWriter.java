@@ -0,0 +1,138 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link PrintStream} printing the strings and characters by encoding them to UTF-8 in a reusable buffer of its own,
+ * the counterpart of {@link ConsoleReader}. A plain print stream wraps each string printed in a new char buffer on its
+ * way to the encoder, which this avoids. The formatted output is printed as usual.
+ */
+class ConsoleWriter extends PrintStream
+{
+    private static final int BUFFER_SIZE = 1024;
+
+    /** The encoded bytes, guarded by this. */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int length = 0;
+
+    /**
+     * @param out       The output.
+     * @param autoFlush Whether to flush the output after each print, as for a print stream.
+     */
+    ConsoleWriter(OutputStream out, boolean autoFlush)
+    {
+        super(out, autoFlush, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void print(String s)
+    {
+        synchronized (this)
+        {
+            encode(String.valueOf(s));
+            flushBuffer();
+        }
+    }
+
+    @Override
+    public void print(char c)
+    {
+        synchronized (this)
+        {
+            encode(c);
+            flushBuffer();
+        }
+    }
+
+    @Override
+    public void println()
+    {
+        synchronized (this)
+        {
+            encode(System.lineSeparator());
+            flushBuffer();
+        }
+    }
+
+    @Override
+    public void println(String s)
+    {
+        synchronized (this)
+        {
+            encode(String.valueOf(s));
+            encode(System.lineSeparator());
+            flushBuffer();
+        }
+    }
+
+    @Override
+    public void println(char c)
+    {
+        synchronized (this)
+        {
+            encode(c);
+            encode(System.lineSeparator());
+            flushBuffer();
+        }
+    }
+
+    private void encode(String s)
+    {
+        for (var i = 0; i < s.length(); i++)
+        {
+            var c = s.charAt(i);
+            if (Character.isHighSurrogate(c) && (i + 1 < s.length()) && Character.isLowSurrogate(s.charAt(i + 1)))
+            {
+                var codePoint = Character.toCodePoint(c, s.charAt(++i));
+                reserve(4);
+                buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            }
+            else
+            {
+                encode(c);
+            }
+        }
+    }
+
+    private void encode(char c)
+    {
+        reserve(3);
+        if (c < 0x80)
+        {
+            buffer[length++] = (byte) c;
+        }
+        else if (c < 0x800)
+        {
+            buffer[length++] = (byte) (0xC0 | (c >> 6));
+            buffer[length++] = (byte) (0x80 | (c & 0x3F));
+        }
+        else if (Character.isSurrogate(c))
+        {
+            // An unpaired surrogate, encoded as by the standard encoder
+            buffer[length++] = '?';
+        }
+        else
+        {
+            buffer[length++] = (byte) (0xE0 | (c >> 12));
+            buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[length++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    private void reserve(int count)
+    {
+        if (length + count > buffer.length) { flushBuffer(); }
+    }
+
+    private void flushBuffer()
+    {
+        if (length > 0)
+        {
+            write(buffer, 0, length);
+            length = 0;
+        }
+    }
+}
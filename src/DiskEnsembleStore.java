@@ -0,0 +1,576 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A log-structured store keeping the ensembles on the disk.
+ * <p>
+ * Every stored ensemble is appended to the log file as a whole record, and each change to it as a small change record
+ * pointing back to the previous record of the ensemble, so that a changed musician costs a few bytes rather than the
+ * whole ensemble. Once an ensemble has gathered {@value #MAX_CHANGE_COUNT} change records, it is appended as a whole
+ * again. Only the offset of the latest record of each ensemble is kept in the memory, and loaded ensembles are kept in
+ * a bounded cache, so the memory used grows with the number of ensembles, by an index entry each, but not with their
+ * musicians. The log is compacted once most of it is taken by outdated records.
+ * <p>
+ * The records of each command are followed by a commit record, and the records after the last commit, left behind by
+ * an interrupted command, are cut off when the log is opened, so that a command changing several ensembles is kept
+ * whole or not at all. With the {@link Journal.Acknowledgement#DURABLE} acknowledgement the records of each command
+ * are forced to the disk once it commits, otherwise only when the store is closed.
+ * <p>
+ * An ensemble evicted from the cache but still referenced elsewhere, e.g. by a command in the undo stack, is tracked
+ * weakly, so that the same instance is returned until it is no longer referenced.
+ */
+class DiskEnsembleStore implements EnsembleStore
+{
+    /** The record of an ensemble. */
+    private static final byte PUT_RECORD = 1;
+    /** The record of a removed ensemble. */
+    private static final byte REMOVE_RECORD = 0;
+    /** The record of a {@link Change} to an ensemble. */
+    private static final byte CHANGE_RECORD = 2;
+    /** The record ending the records of a command, with its timestamp. */
+    private static final byte COMMIT_RECORD = 3;
+
+    /** The maximum number of change records following the whole record of an ensemble. */
+    private static final int MAX_CHANGE_COUNT = 64;
+
+    /** The size of the record header, i.e. the payload length and the record type. */
+    private static final int HEADER_SIZE = Integer.BYTES + Byte.BYTES;
+
+    /** The log is not compacted until it is at least this large. */
+    private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+
+    private final Path path;
+    private final EnsembleRegistry ensembleRegistry;
+    private final Journal.Acknowledgement acknowledgement;
+    /** Whether records have been appended since the last commit. */
+    private boolean isCommitPending = false;
+    private FileChannel channel;
+
+    /** The latest records of each ensemble. */
+    private final Map<String, Records> index = new HashMap<>();
+    /** The total size of the latest records, the rest of the log is garbage. */
+    private long liveSize = 0;
+
+    private final Map<String, Ensemble> cache;
+    private final Map<String, EnsembleReference> references = new HashMap<>();
+    private final ReferenceQueue<Ensemble> referenceQueue = new ReferenceQueue<>();
+
+    /**
+     * Opens a store, the log file is created if it does not exist yet.
+     *
+     * @param path             The path of the log file.
+     * @param ensembleRegistry The registry of the ensemble types.
+     * @param cacheSize        The maximum number of ensembles cached in the memory.
+     * @param acknowledgement  When should a change return.
+     * @throws IOException If the log file cannot be opened or is corrupted.
+     */
+    DiskEnsembleStore(Path path, EnsembleRegistry ensembleRegistry, int cacheSize, Journal.Acknowledgement acknowledgement)
+            throws IOException
+    {
+        if (cacheSize < 1) { throw new IllegalArgumentException("Cache size must be positive"); }
+
+        this.path = path;
+        this.ensembleRegistry = ensembleRegistry;
+        this.acknowledgement = Objects.requireNonNull(acknowledgement);
+        cache = new LinkedHashMap<>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Ensemble> eldest)
+            {
+                return size() > cacheSize;
+            }
+        };
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recover();
+    }
+
+    @Override
+    public synchronized Ensemble get(String ensembleId)
+    {
+        var ensemble = cache.get(ensembleId);
+        if (Objects.nonNull(ensemble)) { return ensemble; }
+
+        purgeReferences();
+        var reference = references.get(ensembleId);
+        if (Objects.nonNull(reference) && Objects.nonNull(ensemble = reference.get()))
+        {
+            cache.put(ensembleId, ensemble);
+            return ensemble;
+        }
+
+        var records = index.get(ensembleId);
+        if (Objects.isNull(records)) { return null; }
+
+        try
+        {
+            ensemble = readEnsemble(records.offset);
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(String.format("Failed to read ensemble %s", ensembleId), ex);
+        }
+
+        cache.put(ensembleId, ensemble);
+        references.put(ensembleId, new EnsembleReference(ensemble, referenceQueue));
+        return ensemble;
+    }
+
+    @Override
+    public synchronized boolean contains(String ensembleId)
+    {
+        return index.containsKey(ensembleId);
+    }
+
+    @Override
+    public synchronized void put(Ensemble ensemble)
+    {
+        var ensembleId = ensemble.getEnsembleID();
+        write(ensemble);
+
+        purgeReferences();
+        cache.put(ensembleId, ensemble);
+        references.put(ensembleId, new EnsembleReference(ensemble, referenceQueue));
+    }
+
+    @Override
+    public synchronized void remove(String ensembleId)
+    {
+        if (!index.containsKey(ensembleId)) { return; }
+
+        try
+        {
+            var buffer = new ByteArrayOutputStream();
+            new DataOutputStream(buffer).writeUTF(ensembleId);
+            append(REMOVE_RECORD, buffer.toByteArray());
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(String.format("Failed to remove ensemble %s", ensembleId), ex);
+        }
+
+        liveSize -= index.remove(ensembleId).size;
+        cache.remove(ensembleId);
+        references.remove(ensembleId);
+    }
+
+    @Override
+    public synchronized boolean isEmpty()
+    {
+        return index.isEmpty();
+    }
+
+    @Override
+    public synchronized int size()
+    {
+        return index.size();
+    }
+
+    @Override
+    public Iterable<Ensemble> values()
+    {
+        final ArrayList<String> ensembleIds;
+        synchronized (this)
+        {
+            ensembleIds = new ArrayList<>(index.keySet());
+        }
+
+        // Load the ensembles lazily, skipping those removed in the meantime
+        return () -> new Iterator<>()
+        {
+            private final Iterator<String> iterator = ensembleIds.iterator();
+            private Ensemble next = null;
+
+            @Override
+            public boolean hasNext()
+            {
+                while (Objects.isNull(next) && iterator.hasNext())
+                {
+                    next = get(iterator.next());
+                }
+                return Objects.nonNull(next);
+            }
+
+            @Override
+            public Ensemble next()
+            {
+                if (!hasNext()) { throw new NoSuchElementException(); }
+
+                var ensemble = next;
+                next = null;
+                return ensemble;
+            }
+        };
+    }
+
+    @Override
+    public synchronized void changed(Change change)
+    {
+        if ((change.kind() == Change.Kind.CREATE_ENSEMBLE) || (change.kind() == Change.Kind.REMOVE_ENSEMBLE)) { return; }
+
+        var ensembleId = change.ensembleId();
+        var records = index.get(ensembleId);
+        if (Objects.isNull(records)) { return; }
+        if (records.changeCount >= MAX_CHANGE_COUNT)
+        {
+            write(get(ensembleId));
+            return;
+        }
+
+        try
+        {
+            var buffer = new ByteArrayOutputStream();
+            var output = new DataOutputStream(buffer);
+            output.writeUTF(ensembleId);
+            output.writeLong(records.offset);
+            output.writeUTF(change.encode());
+
+            records.offset = append(CHANGE_RECORD, buffer.toByteArray());
+            records.size += HEADER_SIZE + buffer.size();
+            records.changeCount++;
+            liveSize += HEADER_SIZE + buffer.size();
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(String.format("Failed to write ensemble %s", ensembleId), ex);
+        }
+    }
+
+    /**
+     * Appends the commit record of the command, forcing the records to the disk if the changes are to be durable, and
+     * compacts the log if needed, between the commands so that a compacted log holds only whole commands.
+     */
+    @Override
+    public synchronized void committed(long timestamp)
+    {
+        if (!isCommitPending) { return; }
+
+        try
+        {
+            appendCommit(timestamp);
+            if (acknowledgement == Journal.Acknowledgement.DURABLE) { channel.force(false); }
+            isCommitPending = false;
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException("Failed to write the ensembles", ex);
+        }
+
+        compactIfNeeded();
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        // The records written outside of a command are committed along
+        if (isCommitPending) { appendCommit(System.currentTimeMillis()); }
+        channel.force(true);
+        channel.close();
+    }
+
+    /**
+     * Appends the latest state of an ensemble to the log.
+     */
+    private void write(Ensemble ensemble)
+    {
+        var ensembleId = ensemble.getEnsembleID();
+        try
+        {
+            var buffer = new ByteArrayOutputStream();
+            EnsembleCodec.write(new DataOutputStream(buffer), ensemble);
+
+            var records = new Records(append(PUT_RECORD, buffer.toByteArray()), HEADER_SIZE + buffer.size());
+            var previous = index.put(ensembleId, records);
+            if (Objects.nonNull(previous)) { liveSize -= previous.size; }
+            liveSize += records.size;
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(String.format("Failed to write ensemble %s", ensembleId), ex);
+        }
+    }
+
+    /**
+     * Appends a record to the log, to be committed and, if the changes are to be durable, forced to the disk by the
+     * commit of the command.
+     *
+     * @return The offset of the record.
+     */
+    private long append(byte type, byte[] payload) throws IOException
+    {
+        var offset = channel.size();
+        var buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        buffer.putInt(payload.length).put(type).put(payload).flip();
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer, offset + buffer.position());
+        }
+        isCommitPending = type != COMMIT_RECORD;
+
+        return offset;
+    }
+
+    private void appendCommit(long timestamp) throws IOException
+    {
+        append(COMMIT_RECORD, ByteBuffer.allocate(Long.BYTES).putLong(timestamp).array());
+    }
+
+    private byte[] readPayload(long offset, ByteBuffer header) throws IOException
+    {
+        header.clear();
+        readFully(header, offset);
+        var payload = ByteBuffer.allocate(header.getInt(0));
+        readFully(payload, offset + HEADER_SIZE);
+        return payload.array();
+    }
+
+    private void readFully(ByteBuffer buffer, long offset) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, offset + buffer.position()) < 0) { throw new EOFException(); }
+        }
+    }
+
+    /**
+     * Reads an ensemble from its latest record, following the change records back to its whole record and applying
+     * the changes onto it.
+     */
+    private Ensemble readEnsemble(long offset) throws IOException
+    {
+        var header = ByteBuffer.allocate(HEADER_SIZE);
+        var changes = new ArrayDeque<Change>();
+        while (true)
+        {
+            var input = new DataInputStream(new ByteArrayInputStream(readPayload(offset, header)));
+            var type = header.get(Integer.BYTES);
+            if (type == PUT_RECORD)
+            {
+                var ensemble = EnsembleCodec.read(input, ensembleRegistry);
+                if (changes.isEmpty()) { return ensemble; }
+
+                var scratch = new MemoryEnsembleStore();
+                scratch.put(ensemble);
+                try
+                {
+                    for (var change : changes) { change.apply(scratch, ensembleRegistry); }
+                }
+                catch (RuntimeException ex)
+                {
+                    throw new IOException(String.format("Corrupted ensemble store at offset %d", offset), ex);
+                }
+                return ensemble;
+            }
+            if (type != CHANGE_RECORD)
+            {
+                throw new IOException(String.format("Corrupted ensemble store at offset %d", offset));
+            }
+
+            input.readUTF();
+            offset = input.readLong();
+            try
+            {
+                changes.push(Change.decode(input.readUTF()));
+            }
+            catch (IllegalArgumentException ex)
+            {
+                throw new IOException(String.format("Corrupted ensemble store at offset %d", offset), ex);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the index from the log, dropping the records after the last commit, including a truncated record left
+     * behind by an interrupted write.
+     */
+    private void recover() throws IOException
+    {
+        var size = committedSize();
+        if (size < channel.size()) { channel.truncate(size); }
+
+        var offset = 0L;
+        var header = ByteBuffer.allocate(HEADER_SIZE);
+        while (offset < size)
+        {
+            header.clear();
+            readFully(header, offset);
+            var length = header.getInt(0);
+            var type = header.get(Integer.BYTES);
+            if (type == COMMIT_RECORD)
+            {
+                offset += HEADER_SIZE + length;
+                continue;
+            }
+
+            var ensembleId = new DataInputStream(new ByteArrayInputStream(readPayload(offset, header))).readUTF();
+            if (type == CHANGE_RECORD)
+            {
+                var records = index.get(ensembleId);
+                if (Objects.isNull(records))
+                {
+                    throw new IOException(String.format("Corrupted ensemble store at offset %d", offset));
+                }
+                records.offset = offset;
+                records.size += HEADER_SIZE + length;
+                records.changeCount++;
+                liveSize += HEADER_SIZE + length;
+            }
+            else if ((type == PUT_RECORD) || (type == REMOVE_RECORD))
+            {
+                var previous = (type == PUT_RECORD)
+                        ? index.put(ensembleId, new Records(offset, HEADER_SIZE + length))
+                        : index.remove(ensembleId);
+                if (Objects.nonNull(previous)) { liveSize -= previous.size; }
+                if (type == PUT_RECORD) { liveSize += HEADER_SIZE + length; }
+            }
+            else
+            {
+                throw new IOException(String.format("Corrupted ensemble store at offset %d", offset));
+            }
+
+            offset += HEADER_SIZE + length;
+        }
+    }
+
+    /**
+     * Finds the end of the last commit record from the record headers.
+     */
+    private long committedSize() throws IOException
+    {
+        var size = channel.size();
+        var offset = 0L;
+        var committedSize = 0L;
+        var header = ByteBuffer.allocate(HEADER_SIZE);
+        while (offset + HEADER_SIZE <= size)
+        {
+            header.clear();
+            readFully(header, offset);
+            var length = header.getInt(0);
+            if ((length < 0) || (offset + HEADER_SIZE + length > size)) { break; }
+
+            offset += HEADER_SIZE + length;
+            if (header.get(Integer.BYTES) == COMMIT_RECORD) { committedSize = offset; }
+        }
+
+        return committedSize;
+    }
+
+    /**
+     * Rewrites the log with only a whole record of each ensemble once more than half of it is garbage.
+     */
+    private void compactIfNeeded()
+    {
+        try
+        {
+            var size = channel.size();
+            if ((size < MIN_COMPACTION_SIZE) || (liveSize * 2 > size)) { return; }
+
+            var compactedPath = path.resolveSibling(path.getFileName() + ".compact");
+            var compactedIndex = new HashMap<String, Records>();
+            var compactedSize = 0L;
+            try (var compacted = FileChannel.open(compactedPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                for (var entry : index.entrySet())
+                {
+                    var payload = new ByteArrayOutputStream();
+                    EnsembleCodec.write(new DataOutputStream(payload), readEnsemble(entry.getValue().offset));
+                    var buffer = ByteBuffer.allocate(HEADER_SIZE + payload.size());
+                    buffer.putInt(payload.size()).put(PUT_RECORD).put(payload.toByteArray()).flip();
+                    compactedIndex.put(entry.getKey(), new Records(compactedSize, buffer.remaining()));
+                    while (buffer.hasRemaining())
+                    {
+                        compactedSize += compacted.write(buffer);
+                    }
+                }
+
+                var commit = ByteBuffer.allocate(HEADER_SIZE + Long.BYTES);
+                commit.putInt(Long.BYTES).put(COMMIT_RECORD).putLong(System.currentTimeMillis()).flip();
+                while (commit.hasRemaining())
+                {
+                    compacted.write(commit);
+                }
+                compacted.force(true);
+            }
+
+            channel.close();
+            try
+            {
+                Files.move(compactedPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                index.putAll(compactedIndex);
+                liveSize = compactedSize;
+            }
+            finally
+            {
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException("Failed to compact the ensemble store", ex);
+        }
+    }
+
+    /**
+     * Forgets the ensembles no longer referenced anywhere.
+     */
+    private void purgeReferences()
+    {
+        EnsembleReference reference;
+        while (Objects.nonNull(reference = (EnsembleReference) referenceQueue.poll()))
+        {
+            references.remove(reference.ensembleId, reference);
+        }
+    }
+
+    /**
+     * The records of an ensemble in the log, i.e. its whole record and the change records following it.
+     */
+    private static final class Records
+    {
+        /** The offset of the latest record. */
+        private long offset;
+        /** The total size of the records. */
+        private long size;
+        /** The number of change records. */
+        private int changeCount = 0;
+
+        Records(long offset, long size)
+        {
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    private static final class EnsembleReference extends WeakReference<Ensemble>
+    {
+        private final String ensembleId;
+
+        EnsembleReference(Ensemble ensemble, ReferenceQueue<Ensemble> queue)
+        {
+            super(ensemble, queue);
+            ensembleId = ensemble.getEnsembleID();
+        }
+    }
+}
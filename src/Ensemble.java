@@ -1,69 +1,80 @@
+import java.io.PrintStream;
 import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
 
 @SuppressWarnings("FieldMayBeFinal")
-abstract class Ensemble
+class Ensemble implements EnsembleSummary
 {
     private String ensembleID;
+    private EnsembleType type;
     private String eName;
     private AbstractList<Musician> musicians;
 
-    Ensemble(String eId)
+    Ensemble(String eId, EnsembleType type)
     {
         ensembleID = eId;
+        this.type = type;
         musicians = new ArrayList<>();
     }
 
-    String getEnsembleID() { return ensembleID; }
+    /**
+     * Moves the musicians off-heap into an arena, as done by a store holding its ensembles there. The musicians keep
+     * their identity, those held in another arena are copied back on-heap on the way.
+     *
+     * @param arena The arena.
+     */
+    void holdMusiciansIn(MusicianArena arena)
+    {
+        if ((musicians instanceof OffHeapMusicianList list) && list.isHeldIn(arena)) { return; }
 
-    String getName() { return eName; }
+        var moved = new ArrayList<Musician>(musicians.size());
+        for (var i = musicians.size() - 1; i >= 0; i--) { moved.add(musicians.remove(i)); }
+        var held = new OffHeapMusicianList(arena);
+        for (var i = moved.size() - 1; i >= 0; i--) { held.add(moved.get(i)); }
+        musicians = held;
+    }
 
-    void setName(String name) { eName = name; }
+    @Override
+    public String getEnsembleID() { return ensembleID; }
 
-    void addMusician(Musician m) { musicians.add(m); }
+    @Override
+    public EnsembleType getType() { return type; }
 
-    void dropMusician(Musician m) { musicians.remove(m); }
+    @Override
+    public String getName() { return eName; }
 
-    Iterable<Musician> getMusicians() { return musicians; }
+    void setName(String name) { eName = name; }
 
-    abstract void updateMusicianRole(Musician musician) throws NumberFormatException, InvalidMusicianRoleException;
+    void addMusician(Musician m) { musicians.add(m); }
 
-    abstract void showEnsemble();
+    void dropMusician(Musician m) { musicians.remove(m); }
 
-    static class Memento
+    /**
+     * Gets the musicians to be read only. A musician held off-heap is read through a flyweight view moved on at each
+     * step, so it must not be kept but through {@link #keep(Musician)}.
+     */
+    Iterable<Musician> readMusicians()
     {
-        private final Ensemble ensemble;
-        private final String eName;
-
-        Memento(Ensemble ensemble)
-        {
-            this.ensemble = ensemble;
-            eName = ensemble.eName;
-        }
-
-        void restore()
-        {
-            ensemble.eName = eName;
-        }
+        return (musicians instanceof OffHeapMusicianList list) ? list.flyweights() : musicians;
     }
-}
 
-class OrchestraEnsemble extends Ensemble
-{
-    private static final int VIOLINIST_ROLE = 1;
-    private static final int CELLIST_ROLE = 2;
-
-    OrchestraEnsemble(String eId)
+    /**
+     * Gets a musician read through {@link #readMusicians()} as one that can be kept.
+     */
+    Musician keep(Musician musician)
     {
-        super(eId);
+        return (musicians instanceof OffHeapMusicianList list) ? list.keep(musician) : musician;
     }
 
-    @Override
-    void updateMusicianRole(Musician musician) throws NumberFormatException, InvalidMusicianRoleException
+    void updateMusicianRole(Musician musician, ConsoleReader in, PrintStream out)
+            throws NumberFormatException, InvalidMusicianRoleException
     {
-        System.out.print("Musician role [1 = violinist / 2 = cellist]: ");
-        var role = Integer.parseInt(Assignment.scanner.nextLine());
-        if ((role != VIOLINIST_ROLE) && (role != CELLIST_ROLE))
+        out.print(type.getRolePrompt());
+        var role = in.nextInt();
+        if (!type.isValidRole(role))
         {
             throw new InvalidMusicianRoleException();
         }
@@ -71,126 +82,82 @@ class OrchestraEnsemble extends Ensemble
         musician.setRole(role);
     }
 
-    @Override
-    void showEnsemble()
+    void showEnsemble(PrintStream out)
     {
-        var violinists = new ArrayList<Musician>();
-        var cellists = new ArrayList<Musician>();
-        for (var musician : getMusicians())
-        {
-            switch (musician.getRole())
+        showEnsemble(out, type, getEnsembleID(), getName(), musicians);
+    }
+
+    /**
+     * Shows an ensemble, which may be a past version of it.
+     */
+    static void showEnsemble(PrintStream out, EnsembleType type, String ensembleId, String name, Iterable<Musician> musicians)
+    {
+        // Printed piece by piece rather than formatted, so that showing leaves no garbage
+        out.print(type.getTitle());
+        out.print(' ');
+        out.print(name);
+        out.print(" (");
+        out.print(ensembleId);
+        out.println(')');
+        Musician flyweight = null;
+        for (var i = 0; i < type.getRoleCount(); i++)
+        {
+            var role = type.getRoleId(i);
+            var isEmpty = true;
+
+            out.println(type.getRoleHeading(i));
+            // Indexed when possible, as an iterator per role would be garbage
+            if (musicians instanceof OffHeapMusicianList list)
             {
-                case VIOLINIST_ROLE -> violinists.add(musician);
-                case CELLIST_ROLE -> cellists.add(musician);
-                default -> throw new IllegalStateException(String.format("Invalid role ID: %d", musician.getRole()));
+                if (Objects.isNull(flyweight)) { flyweight = list.newFlyweight(); }
+                for (var j = 0; j < list.size(); j++) { isEmpty &= !showMusician(out, list.get(j, flyweight), role); }
             }
-        }
-
-        System.out.printf("Orchestra Ensemble %s (%s)%n", getName(), getEnsembleID());
-        System.out.println("Violinist(s):");
-        if (violinists.isEmpty())
-        {
-            System.out.println("  EMPTY");
-        }
-        else
-        {
-            for (var violinist : violinists)
+            else if ((musicians instanceof List<Musician> list) && (musicians instanceof RandomAccess))
             {
-                System.out.printf("- %s (ID: %s)%n", violinist.getName(), violinist.getMID());
+                for (var j = 0; j < list.size(); j++) { isEmpty &= !showMusician(out, list.get(j), role); }
             }
-        }
-        System.out.println("Cellist(s):");
-        if (cellists.isEmpty())
-        {
-            System.out.println("  EMPTY");
-        }
-        else
-        {
-            for (var cellist : cellists)
+            else
+            {
+                for (var musician : musicians) { isEmpty &= !showMusician(out, musician, role); }
+            }
+            if (isEmpty)
             {
-                System.out.printf("- %s (ID: %s)%n", cellist.getName(), cellist.getMID());
+                out.println("  EMPTY");
             }
         }
     }
-}
-
-class JazzBandEnsemble extends Ensemble
-{
-    private static final int PIANIST_ROLE = 1;
-    private static final int SAXOPHONIST_ROLE = 2;
-    private static final int DRUMMER_ROLE = 3;
 
-    JazzBandEnsemble(String eId)
+    /**
+     * Shows a musician if in the role.
+     *
+     * @return Whether the musician is shown.
+     */
+    private static boolean showMusician(PrintStream out, Musician musician, int role)
     {
-        super(eId);
+        if (musician.getRole() != role) { return false; }
+
+        out.print("- ");
+        out.print(musician.getName());
+        out.print(" (ID: ");
+        out.print(musician.getMID());
+        out.println(')');
+        return true;
     }
 
-    @Override
-    void updateMusicianRole(Musician musician) throws NumberFormatException, InvalidMusicianRoleException
+    static class Memento
     {
-        System.out.print("Musician role [1 = pianist / 2 = saxophonist / 3 = drummer]: ");
-        var role = Integer.parseInt(Assignment.scanner.nextLine());
-        if ((role != PIANIST_ROLE) && (role != SAXOPHONIST_ROLE) && (role != DRUMMER_ROLE))
-        {
-            throw new InvalidMusicianRoleException();
-        }
-
-        musician.setRole(role);
-    }
+        private final Ensemble ensemble;
+        private final String eName;
 
-    @Override
-    void showEnsemble()
-    {
-        var pianists = new ArrayList<Musician>();
-        var saxophonists = new ArrayList<Musician>();
-        var drummers = new ArrayList<Musician>();
-        for (var musician : getMusicians())
+        Memento(Ensemble ensemble)
         {
-            switch (musician.getRole())
-            {
-                case PIANIST_ROLE -> pianists.add(musician);
-                case SAXOPHONIST_ROLE -> saxophonists.add(musician);
-                case DRUMMER_ROLE -> drummers.add(musician);
-                default -> throw new IllegalStateException(String.format("Invalid role ID: %d", musician.getRole()));
-            }
+            this.ensemble = ensemble;
+            eName = ensemble.eName;
         }
 
-        System.out.printf("Jazz Band Ensemble %s (%s)%n", getName(), getEnsembleID());
-        System.out.println("Pianist(s):");
-        if (pianists.isEmpty())
-        {
-            System.out.println("  EMPTY");
-        }
-        else
-        {
-            for (var pianist : pianists)
-            {
-                System.out.printf("- %s (ID: %s)%n", pianist.getName(), pianist.getMID());
-            }
-        }
-        System.out.println("Saxophonist(s):");
-        if (saxophonists.isEmpty())
-        {
-            System.out.println("  EMPTY");
-        }
-        else
-        {
-            for (var saxophonist : saxophonists)
-            {
-                System.out.printf("- %s (ID: %s)%n", saxophonist.getName(), saxophonist.getMID());
-            }
-        }
-        System.out.println("Drummer(s):");
-        if (drummers.isEmpty())
-        {
-            System.out.println("  EMPTY");
-        }
-        else
+        void restore()
         {
-            for (var drummer : drummers)
-            {
-                System.out.printf("- %s (ID: %s)%n", drummer.getName(), drummer.getMID());
-            }
+            ensemble.eName = eName;
         }
     }
 }
@@ -0,0 +1,58 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * The binary form of an ensemble, shared by the {@link DiskEnsembleStore} log and the shard protocol.
+ */
+final class EnsembleCodec
+{
+    private EnsembleCodec() {}
+
+    /**
+     * Writes an ensemble with its musicians.
+     */
+    static void write(DataOutput output, Ensemble ensemble) throws IOException
+    {
+        output.writeUTF(ensemble.getEnsembleID());
+        output.writeUTF(ensemble.getType().getKey());
+        output.writeUTF(ensemble.getName());
+        for (var musician : ensemble.readMusicians())
+        {
+            output.writeBoolean(true);
+            output.writeUTF(musician.getMID());
+            output.writeUTF(musician.getName());
+            output.writeInt(musician.getRole());
+        }
+        output.writeBoolean(false);
+    }
+
+    /**
+     * Reads an ensemble with its musicians.
+     *
+     * @throws IOException If it cannot be read or its type is not in the registry.
+     */
+    static Ensemble read(DataInput input, EnsembleRegistry ensembleRegistry) throws IOException
+    {
+        var ensembleId = input.readUTF();
+        var typeKey = input.readUTF();
+        var type = ensembleRegistry.get(typeKey);
+        if (Objects.isNull(type))
+        {
+            throw new IOException(String.format("Invalid ensemble type of ensemble %s: %s", ensembleId, typeKey));
+        }
+
+        var ensemble = new Ensemble(ensembleId, type);
+        ensemble.setName(input.readUTF());
+        while (input.readBoolean())
+        {
+            var musician = new Musician(input.readUTF());
+            musician.setName(input.readUTF());
+            musician.setRole(input.readInt());
+            ensemble.addMusician(musician);
+        }
+
+        return ensemble;
+    }
+}
@@ -0,0 +1,258 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A streaming exporter of {@link Ensemble}s to a file.
+ * <p>
+ * Ensembles are written one at a time through a buffered channel, walking the musicians once without building any
+ * intermediate collection, so the memory used does not grow with the size of the data.
+ */
+abstract class EnsembleExporter implements Closeable
+{
+    /** The size of the buffer between the writer and the channel. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The writer to the exported file. */
+    protected final Writer writer;
+
+    EnsembleExporter(Path path) throws IOException
+    {
+        this(Channels.newWriter(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING), StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE));
+    }
+
+    EnsembleExporter(Writer writer)
+    {
+        this.writer = writer;
+    }
+
+    /**
+     * Creates an exporter of the given format.
+     *
+     * @param format The format, {@code "c"} for CSV or {@code "j"} for JSON.
+     * @param path   The path of the exported file.
+     * @return The exporter, or {@code null} if the format is invalid.
+     * @throws IOException If the file cannot be opened.
+     */
+    static EnsembleExporter create(String format, Path path) throws IOException
+    {
+        return switch (format)
+        {
+            case "c" -> new CsvEnsembleExporter(path);
+            case "j" -> new JsonEnsembleExporter(path);
+            default -> null;
+        };
+    }
+
+    /**
+     * Writes an ensemble and all of its musicians.
+     *
+     * @param ensemble The ensemble.
+     * @throws IOException If the file cannot be written.
+     */
+    abstract void export(Ensemble ensemble) throws IOException;
+
+    /**
+     * Writes anything needed to complete the file.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    void finish() throws IOException {}
+
+    /**
+     * Completes and closes the exported file.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try (writer)
+        {
+            finish();
+        }
+    }
+}
+
+/**
+ * An exporter to CSV, with one row per musician, or a row without musician for an empty ensemble.
+ */
+class CsvEnsembleExporter extends EnsembleExporter
+{
+    CsvEnsembleExporter(Path path) throws IOException
+    {
+        super(path);
+        writer.write("ensemble_id,ensemble_type,ensemble_name,musician_id,musician_name,musician_role\r\n");
+    }
+
+    @Override
+    void export(Ensemble ensemble) throws IOException
+    {
+        var isEmpty = true;
+        for (var musician : ensemble.readMusicians())
+        {
+            writeEnsemble(ensemble);
+            writeField(musician.getMID());
+            writer.write(',');
+            writeField(musician.getName());
+            writer.write(',');
+            writer.write(Integer.toString(musician.getRole()));
+            writer.write("\r\n");
+            isEmpty = false;
+        }
+
+        if (isEmpty)
+        {
+            writeEnsemble(ensemble);
+            writer.write(",,\r\n");
+        }
+    }
+
+    private void writeEnsemble(Ensemble ensemble) throws IOException
+    {
+        writeField(ensemble.getEnsembleID());
+        writer.write(',');
+        writeField(ensemble.getType().getLabel());
+        writer.write(',');
+        writeField(ensemble.getName());
+        writer.write(',');
+    }
+
+    /**
+     * Writes a field, quoted only when it contains a special character.
+     */
+    private void writeField(String value) throws IOException
+    {
+        var isQuoted = false;
+        for (var i = 0; i < value.length(); i++)
+        {
+            var c = value.charAt(i);
+            if ((c == ',') || (c == '"') || (c == '\r') || (c == '\n'))
+            {
+                isQuoted = true;
+                break;
+            }
+        }
+
+        if (!isQuoted)
+        {
+            writer.write(value);
+            return;
+        }
+
+        writer.write('"');
+        for (var i = 0; i < value.length(); i++)
+        {
+            var c = value.charAt(i);
+            if (c == '"') { writer.write('"'); }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+}
+
+/**
+ * An exporter to JSON, with an array of ensemble objects, each holding an array of musician objects.
+ */
+class JsonEnsembleExporter extends EnsembleExporter
+{
+    private boolean isFirst = true;
+
+    JsonEnsembleExporter(Path path) throws IOException
+    {
+        super(path);
+    }
+
+    JsonEnsembleExporter(Writer writer)
+    {
+        super(writer);
+    }
+
+    @Override
+    void export(Ensemble ensemble) throws IOException
+    {
+        writer.write(isFirst ? "[\n  " : ",\n  ");
+        isFirst = false;
+        writeEnsemble(ensemble);
+    }
+
+    @Override
+    void finish() throws IOException
+    {
+        writer.write(isFirst ? "[]\n" : "\n]\n");
+    }
+
+    /**
+     * Writes an ensemble as a single JSON object, without the enclosing array.
+     *
+     * @param ensemble The ensemble.
+     * @throws IOException If the file cannot be written.
+     */
+    void writeEnsemble(Ensemble ensemble) throws IOException
+    {
+        writer.write("{\"id\": ");
+        writeString(ensemble.getEnsembleID());
+        writer.write(", \"type\": ");
+        writeString(ensemble.getType().getLabel());
+        writer.write(", \"name\": ");
+        writeString(ensemble.getName());
+        writer.write(", \"musicians\": [");
+
+        var isFirstMusician = true;
+        for (var musician : ensemble.readMusicians())
+        {
+            writer.write(isFirstMusician ? "\n    {\"id\": " : ",\n    {\"id\": ");
+            isFirstMusician = false;
+
+            writeString(musician.getMID());
+            writer.write(", \"name\": ");
+            writeString(musician.getName());
+            writer.write(", \"role\": ");
+            writer.write(Integer.toString(musician.getRole()));
+            writer.write('}');
+        }
+
+        writer.write(isFirstMusician ? "]}" : "\n  ]}");
+    }
+
+    private void writeString(String value) throws IOException
+    {
+        writeString(writer, value);
+    }
+
+    /**
+     * Writes a JSON string literal.
+     */
+    static void writeString(Writer writer, String value) throws IOException
+    {
+        writer.write('"');
+        for (var i = 0; i < value.length(); i++)
+        {
+            var c = value.charAt(i);
+            switch (c)
+            {
+                case '"' -> writer.write("\\\"");
+                case '\\' -> writer.write("\\\\");
+                case '\n' -> writer.write("\\n");
+                case '\r' -> writer.write("\\r");
+                case '\t' -> writer.write("\\t");
+                default ->
+                {
+                    if (c < 0x20)
+                    {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    }
+                    else
+                    {
+                        writer.write(c);
+                    }
+                }
+            }
+        }
+        writer.write('"');
+    }
+}
@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * The registry of {@link EnsembleType}s, loaded from a properties file.
+ */
+final class EnsembleRegistry
+{
+    private final Map<String, EnsembleType> types;
+    private final String typePrompt;
+
+    EnsembleRegistry(Collection<EnsembleType> types)
+    {
+        var map = new LinkedHashMap<String, EnsembleType>();
+        var typePrompt = new StringBuilder("Ensemble type [");
+        for (var type : types)
+        {
+            if (Objects.nonNull(map.put(type.getKey(), type)))
+            {
+                throw new IllegalArgumentException(String.format("Duplicated ensemble type: %s", type.getKey()));
+            }
+            typePrompt.append((map.size() == 1) ? "" : " / ").append(type.getKey()).append(" = ").append(type.getName());
+        }
+
+        this.types = Collections.unmodifiableMap(map);
+        this.typePrompt = typePrompt.append("]: ").toString();
+    }
+
+    /**
+     * Loads the registry from a properties file, see {@code ensembles.properties} for the format.
+     *
+     * @param path The path of the properties file.
+     * @return The loaded registry.
+     * @throws IOException              If the file cannot be read.
+     * @throws IllegalArgumentException If the file is malformed.
+     */
+    static EnsembleRegistry load(Path path) throws IOException
+    {
+        var properties = new Properties();
+        try (var reader = Files.newBufferedReader(path, StandardCharsets.UTF_8))
+        {
+            properties.load(reader);
+        }
+
+        var types = new ArrayList<EnsembleType>();
+        for (var key : split(require(properties, "types"), ','))
+        {
+            var roles = new ArrayList<EnsembleType.Role>();
+            for (var role : split(require(properties, key + ".roles"), ','))
+            {
+                var pair = split(role, ':');
+                if (pair.length != 2)
+                {
+                    throw new IllegalArgumentException(String.format("Malformed role of ensemble type %s: %s", key, role));
+                }
+
+                try
+                {
+                    roles.add(new EnsembleType.Role(Integer.parseInt(pair[0]), pair[1]));
+                }
+                catch (NumberFormatException ex)
+                {
+                    throw new IllegalArgumentException(String.format("Invalid role ID of ensemble type %s: %s", key, pair[0]), ex);
+                }
+            }
+
+            types.add(new EnsembleType(key, require(properties, key + ".name"), require(properties, key + ".label"),
+                    require(properties, key + ".title"), roles));
+        }
+
+        return new EnsembleRegistry(types);
+    }
+
+    /**
+     * Gets a type by its key.
+     *
+     * @param key The key of the type.
+     * @return The type, or {@code null} if there is no such type.
+     */
+    EnsembleType get(String key)
+    {
+        return types.get(key);
+    }
+
+    /** All the types, in the order they are offered. */
+    Collection<EnsembleType> getTypes() { return types.values(); }
+
+    /** The prompt to enter an ensemble type, e.g. {@code "Ensemble type [o = orchestra / j = jazz band]: "}. */
+    String getTypePrompt() { return typePrompt; }
+
+    private static String require(Properties properties, String name)
+    {
+        var value = properties.getProperty(name);
+        if (Objects.isNull(value) || value.isBlank())
+        {
+            throw new IllegalArgumentException(String.format("Missing property: %s", name));
+        }
+
+        return value.trim();
+    }
+
+    private static String[] split(String value, char separator)
+    {
+        var values = value.split(String.valueOf(separator));
+        for (var i = 0; i < values.length; i++)
+        {
+            values[i] = values[i].trim();
+        }
+
+        return values;
+    }
+}
@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A store of {@link Ensemble}s by their IDs.
+ * <p>
+ * Ensembles are changed in place by the commands, each change is then reported to the store through
+ * {@link #changed(Change)}, so that a store not holding all the ensembles in the memory can persist it.
+ */
+interface EnsembleStore extends ChangeListener, AutoCloseable
+{
+    /**
+     * Gets an ensemble.
+     *
+     * @param ensembleId The ID of the ensemble.
+     * @return The ensemble, or {@code null} if there is no such ensemble.
+     */
+    Ensemble get(String ensembleId);
+
+    /**
+     * Checks whether an ensemble exists.
+     *
+     * @param ensembleId The ID of the ensemble.
+     */
+    boolean contains(String ensembleId);
+
+    /**
+     * Stores an ensemble, replacing the one with the same ID.
+     *
+     * @param ensemble The ensemble.
+     */
+    void put(Ensemble ensemble);
+
+    /**
+     * Removes an ensemble.
+     *
+     * @param ensembleId The ID of the ensemble.
+     */
+    void remove(String ensembleId);
+
+    /**
+     * Checks whether the store has no ensembles.
+     */
+    boolean isEmpty();
+
+    /**
+     * All the ensembles in the store, in no particular order.
+     */
+    Iterable<Ensemble> values();
+
+    /**
+     * The summaries of all the ensembles in the store, without their musicians, in no particular order.
+     */
+    default Iterable<? extends EnsembleSummary> summaries() { return values(); }
+
+    /**
+     * Counts the ensembles in the store.
+     */
+    default int size()
+    {
+        var size = 0;
+        for (var ignored : summaries()) { size++; }
+        return size;
+    }
+
+    /**
+     * Invoked after an ensemble in the store has been changed in place. Creations and removals are made through
+     * {@link #put(Ensemble)} and {@link #remove(String)} instead.
+     */
+    @Override
+    default void changed(Change change) {}
+
+    @Override
+    default void close() throws IOException {}
+}
+
+/**
+ * The identity and name of an {@link Ensemble}, all a listing of the ensembles needs.
+ */
+interface EnsembleSummary
+{
+    String getEnsembleID();
+
+    EnsembleType getType();
+
+    String getName();
+}
+
+/**
+ * A store holding all the ensembles in the memory, their musicians optionally off-heap in an arena of the store.
+ */
+class MemoryEnsembleStore implements EnsembleStore
+{
+    private final Map<String, Ensemble> ensembleMap = new HashMap<>();
+    /** The arena holding the musicians of the stored ensembles, {@code null} to hold them on-heap. */
+    private final MusicianArena musicianArena;
+
+    MemoryEnsembleStore()
+    {
+        this(null);
+    }
+
+    /**
+     * @param musicianArena The arena to hold the musicians of the stored ensembles, {@code null} to hold them on-heap.
+     */
+    MemoryEnsembleStore(MusicianArena musicianArena)
+    {
+        this.musicianArena = musicianArena;
+    }
+
+    @Override
+    public Ensemble get(String ensembleId) { return ensembleMap.get(ensembleId); }
+
+    @Override
+    public boolean contains(String ensembleId) { return ensembleMap.containsKey(ensembleId); }
+
+    @Override
+    public void put(Ensemble ensemble)
+    {
+        if (Objects.nonNull(musicianArena)) { ensemble.holdMusiciansIn(musicianArena); }
+        ensembleMap.put(ensemble.getEnsembleID(), ensemble);
+    }
+
+    @Override
+    public void remove(String ensembleId) { ensembleMap.remove(ensembleId); }
+
+    @Override
+    public boolean isEmpty() { return ensembleMap.isEmpty(); }
+
+    @Override
+    public int size() { return ensembleMap.size(); }
+
+    @Override
+    public Iterable<Ensemble> values() { return ensembleMap.values(); }
+}
@@ -0,0 +1,139 @@
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * A type of {@link Ensemble}, with its table of musician roles.
+ */
+final class EnsembleType
+{
+    /** The maximum role ID, so that the valid roles fit in a bitmask. */
+    static final int MAX_ROLE_ID = Long.SIZE - 1;
+
+    private final String key;
+    private final String name;
+    private final String label;
+    private final String title;
+    private final int[] roleIds;
+    private final String[] roleNames;
+    private final String[] roleHeadings;
+    private final long roleMask;
+    private final String rolePrompt;
+
+    /**
+     * @param key   The key to select the type when creating an ensemble, e.g. {@code "o"}.
+     * @param name  The name shown in the ensemble type prompt, e.g. {@code "orchestra"}.
+     * @param label The label shown in the ensemble lists, e.g. {@code "OrchestraEnsemble"}.
+     * @param title The title shown when showing an ensemble, e.g. {@code "Orchestra Ensemble"}.
+     * @param roles The musician roles, in the order they are shown.
+     * @throws IllegalArgumentException If a role ID is out of range or duplicated.
+     */
+    EnsembleType(String key, String name, String label, String title, List<Role> roles)
+    {
+        this.key = Objects.requireNonNull(key);
+        this.name = Objects.requireNonNull(name);
+        this.label = Objects.requireNonNull(label);
+        this.title = Objects.requireNonNull(title);
+
+        if (roles.isEmpty())
+        {
+            throw new IllegalArgumentException(String.format("Ensemble type %s has no roles", key));
+        }
+
+        roleIds = new int[roles.size()];
+        roleNames = new String[roles.size()];
+        roleHeadings = new String[roles.size()];
+        var roleMask = 0L;
+        var rolePrompt = new StringBuilder("Musician role [");
+        for (var i = 0; i < roles.size(); i++)
+        {
+            var role = roles.get(i);
+            if ((role.id() < 0) || (role.id() > MAX_ROLE_ID))
+            {
+                throw new IllegalArgumentException(String.format("Invalid role ID of ensemble type %s: %d", key, role.id()));
+            }
+            else if ((roleMask & (1L << role.id())) != 0)
+            {
+                throw new IllegalArgumentException(String.format("Duplicated role ID of ensemble type %s: %d", key, role.id()));
+            }
+
+            roleIds[i] = role.id();
+            roleNames[i] = role.name();
+            roleHeadings[i] = role.name().substring(0, 1).toUpperCase(Locale.ROOT) + role.name().substring(1) + "(s):";
+            roleMask |= 1L << role.id();
+            rolePrompt.append((i == 0) ? "" : " / ").append(role.id()).append(" = ").append(role.name());
+        }
+        this.roleMask = roleMask;
+        this.rolePrompt = rolePrompt.append("]: ").toString();
+    }
+
+    String getKey() { return key; }
+
+    String getName() { return name; }
+
+    String getLabel() { return label; }
+
+    String getTitle() { return title; }
+
+    /** The number of roles. */
+    int getRoleCount() { return roleIds.length; }
+
+    /** The ID of the role at the index, in the order they are shown. */
+    int getRoleId(int index) { return roleIds[index]; }
+
+    /** The heading of the role at the index, e.g. {@code "Violinist(s):"}. */
+    String getRoleHeading(int index) { return roleHeadings[index]; }
+
+    /** The prompt to enter a musician role, e.g. {@code "Musician role [1 = violinist / 2 = cellist]: "}. */
+    String getRolePrompt() { return rolePrompt; }
+
+    /**
+     * Checks whether a role ID is valid for this type.
+     *
+     * @param role The role ID.
+     */
+    boolean isValidRole(int role)
+    {
+        return (role >= 0) && (role <= MAX_ROLE_ID) && ((roleMask & (1L << role)) != 0);
+    }
+
+    /**
+     * Gets the name of a role.
+     *
+     * @param role The role ID.
+     * @return The name of the role, or {@code null} if the role is invalid.
+     */
+    String getRoleName(int role)
+    {
+        for (var i = 0; i < roleIds.length; i++)
+        {
+            if (roleIds[i] == role) { return roleNames[i]; }
+        }
+
+        return null;
+    }
+
+    /**
+     * Finds a role by its name, ignoring the case, to map the roles between ensemble types.
+     *
+     * @param name The role name, e.g. {@code "violinist"}.
+     * @return The role ID, or {@code -1} if there is no such role.
+     */
+    int findRole(String name)
+    {
+        for (var i = 0; i < roleNames.length; i++)
+        {
+            if (roleNames[i].equalsIgnoreCase(name)) { return roleIds[i]; }
+        }
+
+        return -1;
+    }
+
+    /**
+     * A musician role.
+     *
+     * @param id   The role ID.
+     * @param name The role name, e.g. {@code "violinist"}.
+     */
+    record Role(int id, String name) {}
+}
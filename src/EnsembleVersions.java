@@ -0,0 +1,421 @@
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The past versions of the ensembles, for answering time-travel queries without disturbing the current state.
+ * <p>
+ * Every command committing changes creates a new version, stamped with a sequence number and a timestamp. Version 0 is
+ * the state at startup, or the empty state before the first command replayed from a journal. Only the latest
+ * {@value #CAPACITY} versions are kept, so how far back the ensembles can be looked at depends on how busy the system
+ * is, e.g. about a week back at 25 commands an hour. The older versions are dropped to bound the memory used; a journal
+ * keeps the whole history.
+ * <p>
+ * An ensemble not changed in the versions kept is copied from the store once, when first looked at or about to be
+ * changed through {@link #track(EnsembleStore)}, so that each ensemble looked at or changed has a timeline of immutable
+ * {@link Snapshot}s, whose musicians are held in a {@link PersistentTreeMap}, so that a change copies only O(log m)
+ * nodes of the previous snapshot. Looking up the snapshot of an ensemble at a version or a time is a binary search,
+ * touching O(log n) entries.
+ */
+class EnsembleVersions implements ChangeListener
+{
+    /** The number of versions kept, the older ones are dropped. */
+    static final int CAPACITY = 4096;
+
+    private final EnsembleStore ensembleStore;
+    private final EnsembleRegistry ensembleRegistry;
+
+    /** The timeline of each ensemble changed in the versions kept. */
+    private final Map<String, Timeline> timelines = new HashMap<>();
+    /** The IDs of the ensembles copied or changed since the latest version, their timelines to be trimmed. */
+    private final Set<String> touchedIds = new HashSet<>();
+
+    /** The latest version. */
+    private long version = 0;
+    /** Whether changes have been made since the latest version. */
+    private boolean isPending = false;
+    /** The timestamp of each version kept, in milliseconds since the epoch, indexed by the version modulo the capacity. */
+    private final long[] timestamps = new long[CAPACITY];
+
+    /**
+     * Creates the versions, with the ensembles at startup as version 0.
+     *
+     * @param ensembleStore    The store of the ensembles, read for the ensembles not changed.
+     * @param ensembleRegistry The registry of the ensemble types.
+     */
+    EnsembleVersions(EnsembleStore ensembleStore, EnsembleRegistry ensembleRegistry)
+    {
+        this.ensembleStore = ensembleStore;
+        this.ensembleRegistry = ensembleRegistry;
+        timestamps[0] = System.currentTimeMillis();
+    }
+
+    /**
+     * Wraps a store, so that an ensemble got from it is copied before it is changed in place.
+     *
+     * @param ensembleStore The store, the one of the versions.
+     */
+    EnsembleStore track(EnsembleStore ensembleStore)
+    {
+        return new TrackingEnsembleStore(ensembleStore);
+    }
+
+    /**
+     * Gets the latest version.
+     */
+    synchronized long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Gets the oldest version kept.
+     */
+    synchronized long getOldestVersion()
+    {
+        return Math.max(0, version - CAPACITY + 1);
+    }
+
+    /**
+     * Gets the oldest version kept of an ensemble, later than the oldest one kept if the ensemble was changed by the
+     * undo or redo of a command made before it.
+     *
+     * @param ensembleId The ID of the ensemble.
+     */
+    synchronized long getOldestVersion(String ensembleId)
+    {
+        var timeline = timelines.get(ensembleId);
+        return Math.max(getOldestVersion(), Objects.nonNull(timeline) ? timeline.knownFrom : 0);
+    }
+
+    /**
+     * Gets the timestamp of a version.
+     *
+     * @param version A version kept.
+     */
+    synchronized Instant getTimestamp(long version)
+    {
+        return Instant.ofEpochMilli(timestamps[(int) (version % CAPACITY)]);
+    }
+
+    /**
+     * Finds the version current at a time.
+     *
+     * @param time The time.
+     * @return The latest version made at or before the time, or {@code -1} if the time is before the oldest version kept.
+     */
+    synchronized long findVersion(Instant time)
+    {
+        var millis = time.toEpochMilli();
+        var low = getOldestVersion();
+        var high = version;
+        while (low <= high)
+        {
+            var middle = (low + high) >>> 1;
+            if (timestamps[(int) (middle % CAPACITY)] <= millis) { low = middle + 1; } else { high = middle - 1; }
+        }
+
+        return (high >= getOldestVersion()) ? high : -1;
+    }
+
+    /**
+     * Gets the snapshot of an ensemble at a version.
+     *
+     * @param ensembleId The ID of the ensemble.
+     * @param version    A version kept of the ensemble.
+     * @return The snapshot, or {@code null} if the ensemble did not exist at the version.
+     */
+    synchronized Snapshot get(String ensembleId, long version)
+    {
+        var timeline = timelines.get(ensembleId);
+        if (Objects.isNull(timeline))
+        {
+            // Not changed in the versions kept, so its current state is copied as its base version, kept for the next
+            // lookups until the timelines not changed are dropped
+            var ensemble = ensembleStore.get(ensembleId);
+            if (Objects.isNull(ensemble)) { return null; }
+            timeline = createTimeline(ensemble);
+        }
+
+        return timeline.at(version);
+    }
+
+    @Override
+    public synchronized void changed(Change change)
+    {
+        var next = version + 1;
+        isPending = true;
+        touchedIds.add(change.ensembleId());
+
+        var timeline = timelines.get(change.ensembleId());
+        if (change.kind() == Change.Kind.CREATE_ENSEMBLE)
+        {
+            if (Objects.isNull(timeline)) { timelines.put(change.ensembleId(), timeline = new Timeline()); }
+            timeline.musicianKeys.clear();
+            timeline.append(next, new Snapshot(ensembleRegistry.get(change.subject()), change.name(),
+                    PersistentTreeMap.empty()));
+            return;
+        }
+        if (Objects.isNull(timeline))
+        {
+            // Changed without being tracked, e.g. by the undo of an old command, so only its state from now on is known
+            timeline = new Timeline();
+            timeline.knownFrom = next;
+            var ensemble = ensembleStore.get(change.ensembleId());
+            timeline.append(next, Objects.nonNull(ensemble) ? timeline.copy(ensemble) : null);
+            timelines.put(change.ensembleId(), timeline);
+            return;
+        }
+
+        var latest = timeline.latest();
+        if (Objects.isNull(latest)) { return; }
+        switch (change.kind())
+        {
+            case REMOVE_ENSEMBLE -> timeline.append(next, null);
+            case RENAME_ENSEMBLE -> timeline.append(next, new Snapshot(latest.type(), change.name(), latest.musicians()));
+            case ADD_MUSICIAN ->
+            {
+                var key = timeline.nextKey++;
+                timeline.musicianKeys.put(change.subject(), key);
+                timeline.append(next, new Snapshot(latest.type(), latest.name(),
+                        latest.musicians().put(key, copy(change.subject(), change.name(), change.role()))));
+            }
+            case DROP_MUSICIAN ->
+            {
+                var key = timeline.musicianKeys.remove(change.subject());
+                if (Objects.isNull(key)) { return; }
+                timeline.append(next, new Snapshot(latest.type(), latest.name(), latest.musicians().remove(key)));
+            }
+            case UPDATE_ROLE ->
+            {
+                var key = timeline.musicianKeys.get(change.subject());
+                if (Objects.isNull(key)) { return; }
+                var musician = latest.musicians().get(key);
+                timeline.append(next, new Snapshot(latest.type(), latest.name(),
+                        latest.musicians().put(key, copy(musician.getMID(), musician.getName(), change.role()))));
+            }
+        }
+    }
+
+    /**
+     * Makes the changes since the latest version a new version, then drops the timelines no longer needed.
+     */
+    @Override
+    public synchronized void committed(long timestamp)
+    {
+        if (isPending)
+        {
+            isPending = false;
+            var previous = timestamps[(int) (version % CAPACITY)];
+            version++;
+            // A version replayed from a journal may be older than the startup, the empty state before it is not
+            if (version == 1) { timestamps[0] = Math.min(timestamps[0], timestamp); }
+            timestamps[(int) (version % CAPACITY)] = Math.max(timestamp, (version == 1) ? timestamps[0] : previous);
+        }
+
+        var oldestVersion = getOldestVersion();
+        for (var ensembleId : touchedIds) { trim(ensembleId, timelines.get(ensembleId), oldestVersion); }
+        touchedIds.clear();
+
+        // Once per capacity, the timelines not changed since are dropped as well
+        if ((version % CAPACITY == 0) && (version > 0))
+        {
+            timelines.entrySet().removeIf(entry -> entry.getValue().trim(oldestVersion));
+        }
+    }
+
+    private void trim(String ensembleId, Timeline timeline, long oldestVersion)
+    {
+        if (Objects.nonNull(timeline) && timeline.trim(oldestVersion)) { timelines.remove(ensembleId); }
+    }
+
+    /**
+     * Copies an ensemble about to be changed, unless it has a timeline already.
+     */
+    private synchronized void copy(Ensemble ensemble)
+    {
+        if (Objects.isNull(ensemble) || timelines.containsKey(ensemble.getEnsembleID())) { return; }
+
+        createTimeline(ensemble);
+        touchedIds.add(ensemble.getEnsembleID());
+    }
+
+    /**
+     * Creates the timeline of an ensemble not changed in the versions kept, from its current state.
+     */
+    private Timeline createTimeline(Ensemble ensemble)
+    {
+        var timeline = new Timeline();
+        timeline.knownFrom = getOldestVersion();
+        timeline.append(timeline.knownFrom, timeline.copy(ensemble));
+        timelines.put(ensemble.getEnsembleID(), timeline);
+        return timeline;
+    }
+
+    /**
+     * Copies a musician on-heap, never to be modified afterwards.
+     */
+    private static Musician copy(String musicianId, String name, int role)
+    {
+        var musician = new Musician(musicianId);
+        musician.setName(name);
+        musician.setRole(role);
+        return musician;
+    }
+
+    /**
+     * An immutable snapshot of an ensemble.
+     *
+     * @param type      The type of the ensemble.
+     * @param name      The name of the ensemble.
+     * @param musicians The musicians, keyed in the order they were added.
+     */
+    record Snapshot(EnsembleType type, String name, PersistentTreeMap<Long, Musician> musicians) {}
+
+    /**
+     * The snapshots of an ensemble, in the order of their versions.
+     */
+    private static final class Timeline
+    {
+        private long[] versions = new long[4];
+        /** The snapshot from each version on, {@code null} while the ensemble did not exist. */
+        private Snapshot[] snapshots = new Snapshot[4];
+        private int count = 0;
+
+        /** The oldest version known, the state before it unknown. */
+        long knownFrom = 0;
+        /** The key of each current musician in the snapshots. */
+        final Map<String, Long> musicianKeys = new HashMap<>();
+        /** The key of the next musician added. */
+        long nextKey = 0;
+
+        Snapshot latest()
+        {
+            return (count > 0) ? snapshots[count - 1] : null;
+        }
+
+        /**
+         * Appends a snapshot, replacing the latest one if it is of the same version.
+         */
+        void append(long version, Snapshot snapshot)
+        {
+            if ((count > 0) && (versions[count - 1] == version))
+            {
+                snapshots[count - 1] = snapshot;
+                return;
+            }
+
+            if (count == versions.length)
+            {
+                versions = Arrays.copyOf(versions, count * 2);
+                snapshots = Arrays.copyOf(snapshots, count * 2);
+            }
+            versions[count] = version;
+            snapshots[count] = snapshot;
+            count++;
+        }
+
+        /**
+         * Copies the current state of an ensemble into a snapshot, keying its musicians.
+         */
+        Snapshot copy(Ensemble ensemble)
+        {
+            var musicians = PersistentTreeMap.<Long, Musician>empty();
+            for (var musician : ensemble.readMusicians())
+            {
+                var key = nextKey++;
+                musicianKeys.put(musician.getMID(), key);
+                musicians = musicians.put(key, EnsembleVersions.copy(musician.getMID(), musician.getName(), musician.getRole()));
+            }
+
+            return new Snapshot(ensemble.getType(), ensemble.getName(), musicians);
+        }
+
+        Snapshot at(long version)
+        {
+            var index = indexAt(version);
+            return (index >= 0) ? snapshots[index] : null;
+        }
+
+        /**
+         * Drops the snapshots older than a version, but the one current at it.
+         *
+         * @return Whether the timeline has not changed since the version, so that the store has its current state.
+         */
+        boolean trim(long oldestVersion)
+        {
+            var index = indexAt(oldestVersion);
+            if (index > 0)
+            {
+                count -= index;
+                System.arraycopy(versions, index, versions, 0, count);
+                System.arraycopy(snapshots, index, snapshots, 0, count);
+                Arrays.fill(snapshots, count, count + index, null);
+            }
+
+            return (knownFrom <= oldestVersion) && (count == 1) && (versions[0] <= oldestVersion);
+        }
+
+        private int indexAt(long version)
+        {
+            var low = 0;
+            var high = count - 1;
+            while (low <= high)
+            {
+                var middle = (low + high) >>> 1;
+                if (versions[middle] <= version) { low = middle + 1; } else { high = middle - 1; }
+            }
+
+            return high;
+        }
+    }
+
+    /**
+     * A store copying each ensemble got from it into the versions before it is changed in place.
+     */
+    private final class TrackingEnsembleStore implements EnsembleStore
+    {
+        private final EnsembleStore ensembleStore;
+
+        TrackingEnsembleStore(EnsembleStore ensembleStore)
+        {
+            this.ensembleStore = ensembleStore;
+        }
+
+        @Override
+        public Ensemble get(String ensembleId)
+        {
+            var ensemble = ensembleStore.get(ensembleId);
+            copy(ensemble);
+            return ensemble;
+        }
+
+        @Override
+        public boolean contains(String ensembleId) { return ensembleStore.contains(ensembleId); }
+
+        @Override
+        public void put(Ensemble ensemble) { ensembleStore.put(ensemble); }
+
+        @Override
+        public void remove(String ensembleId) { ensembleStore.remove(ensembleId); }
+
+        @Override
+        public boolean isEmpty() { return ensembleStore.isEmpty(); }
+
+        @Override
+        public Iterable<Ensemble> values() { return ensembleStore.values(); }
+
+        @Override
+        public Iterable<? extends EnsembleSummary> summaries() { return ensembleStore.summaries(); }
+
+        @Override
+        public int size() { return ensembleStore.size(); }
+
+        @Override
+        public void changed(Change change) { ensembleStore.changed(change); }
+    }
+}
@@ -0,0 +1,189 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An undo/redo history. Commands operating on it must hold its monitor.
+ */
+class History
+{
+    /** The undo stack. */
+    final Stack<Command> undoStack = new Stack<>();
+    /** The redo stack. */
+    final Stack<Command> redoStack = new Stack<>();
+}
+
+/**
+ * The undo/redo histories of the system, either one global history or one per ensemble.
+ * <p>
+ * In the per-ensemble mode, undo and redo act on the history of the active ensemble only, and each history has its
+ * own monitor, so that undoing in one ensemble does not wait for the commands on another. When the creation of an
+ * ensemble is undone, its history is set aside rather than discarded, so that the creation can still be redone: redo
+ * falls back to the history of the ensemble removed last when the active ensemble has nothing to redo, and the history
+ * is taken back when the ensemble is created again.
+ * <p>
+ * Either way, a log of the latest {@value #LOG_CAPACITY} commands executed, undone and redone is kept for auditing.
+ * The entries are formatted when appended, so that they keep describing the commands as they stood then, and appended
+ * without locking.
+ */
+class Histories implements ChangeListener
+{
+    /** The global history, {@code null} in the per-ensemble mode. */
+    private final History globalHistory;
+    /** The maximum number of entries kept in the log, the oldest are overwritten. */
+    private static final int LOG_CAPACITY = 1024;
+
+    /** The history of each ensemble in the per-ensemble mode. */
+    private final Map<String, History> ensembleHistories = new ConcurrentHashMap<>();
+    /** The histories of the ensembles removed by undoing their creation, in the order removed, guarded by itself. */
+    private final LinkedHashMap<String, History> removedHistories = new LinkedHashMap<>();
+
+    /** The ring of the latest log entries, each at its sequence number modulo the capacity. */
+    private final AtomicReferenceArray<LogEntry> log = new AtomicReferenceArray<>(LOG_CAPACITY);
+    /** The number of entries ever appended to the log. */
+    private final AtomicLong logCount = new AtomicLong();
+
+    /**
+     * @param isPerEnsemble Whether each ensemble has its own history.
+     */
+    Histories(boolean isPerEnsemble)
+    {
+        globalHistory = isPerEnsemble ? null : new History();
+    }
+
+    boolean isPerEnsemble() { return Objects.isNull(globalHistory); }
+
+    /**
+     * Gets the history that the commands on an ensemble are recorded in.
+     *
+     * @param ensembleId The ID of the ensemble, may be {@code null}.
+     * @return The history, or {@code null} if there is none for the ensemble.
+     */
+    History get(String ensembleId)
+    {
+        if (Objects.nonNull(globalHistory)) { return globalHistory; }
+
+        return Objects.nonNull(ensembleId) ? ensembleHistories.get(ensembleId) : null;
+    }
+
+    /**
+     * Gets the history of the ensemble removed last by undoing its creation, so that the creation can be redone.
+     *
+     * @return The history, or {@code null} if there is none.
+     */
+    History getRemoved()
+    {
+        synchronized (removedHistories)
+        {
+            var entry = removedHistories.lastEntry();
+            return Objects.nonNull(entry) ? entry.getValue() : null;
+        }
+    }
+
+    /**
+     * Gets the history that redo acts on for an ensemble, falling back in the per-ensemble mode to the history of the
+     * ensemble removed last when the ensemble has nothing to redo, so that its creation can be redone.
+     *
+     * @param ensembleId The ID of the ensemble, may be {@code null}.
+     * @return The history, or {@code null} if there is none.
+     */
+    History getRedoHistory(String ensembleId)
+    {
+        var history = get(ensembleId);
+        if (isPerEnsemble() && !canRedo(history)) { history = getRemoved(); }
+        return history;
+    }
+
+    private static boolean canRedo(History history)
+    {
+        if (Objects.isNull(history)) { return false; }
+
+        synchronized (history)
+        {
+            return !history.redoStack.isEmpty();
+        }
+    }
+
+    /**
+     * Records an executed command in the history of its ensemble, clearing the redo stack.
+     *
+     * @param command The command.
+     */
+    void record(Command command)
+    {
+        var history = Objects.nonNull(globalHistory) ? globalHistory :
+                ensembleHistories.computeIfAbsent(Objects.requireNonNull(command.getEnsembleId()), id -> new History());
+        synchronized (history)
+        {
+            // Clear the redo stack when the command requested to be pushed to the undo stack
+            if (!history.redoStack.isEmpty()) { history.redoStack.clear(); }
+            history.undoStack.push(command);
+        }
+        log("Executed", command);
+    }
+
+    /**
+     * Appends a command to the log, overwriting the oldest entry once the log is full.
+     *
+     * @param action  What was done with the command, e.g. {@code "Undone"}.
+     * @param command The command.
+     */
+    void log(String action, Command command)
+    {
+        var index = logCount.getAndIncrement();
+        var text = String.format("[%s] %s: %s", command.getEnsembleId(), action, command);
+        log.set((int) (index % LOG_CAPACITY), new LogEntry(index, text));
+    }
+
+    /**
+     * Gets a snapshot of the log.
+     */
+    List<String> getLog()
+    {
+        var count = logCount.get();
+        var entries = new ArrayList<String>((int) Math.min(count, LOG_CAPACITY));
+        for (var index = Math.max(0, count - LOG_CAPACITY); index < count; index++)
+        {
+            // Skip an entry not set yet, or overwritten meanwhile
+            var entry = log.get((int) (index % LOG_CAPACITY));
+            if (Objects.nonNull(entry) && (entry.index() == index)) { entries.add(entry.text()); }
+        }
+
+        return entries;
+    }
+
+    @Override
+    public void changed(Change change)
+    {
+        if (!isPerEnsemble()) { return; }
+
+        var ensembleId = change.ensembleId();
+        synchronized (removedHistories)
+        {
+            if (change.kind() == Change.Kind.REMOVE_ENSEMBLE)
+            {
+                var history = ensembleHistories.remove(ensembleId);
+                if (Objects.nonNull(history)) { removedHistories.put(ensembleId, history); }
+            }
+            else if (change.kind() == Change.Kind.CREATE_ENSEMBLE)
+            {
+                var history = removedHistories.remove(ensembleId);
+                if (Objects.nonNull(history)) { ensembleHistories.put(ensembleId, history); }
+            }
+        }
+    }
+
+    /**
+     * An entry of the log.
+     *
+     * @param index The sequence number of the entry.
+     * @param text  The entry, formatted when appended.
+     */
+    private record LogEntry(long index, String text) {}
+}
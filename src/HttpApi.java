@@ -0,0 +1,479 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An HTTP/JSON API of the system, built on the JDK {@link HttpServer} with a virtual thread per request.
+ * <p>
+ * Changes are made by executing the same commands as the console, with their prompts answered from the request
+ * parameters, so that they are recorded in the undo stack as usual. Commands run one at a time, while reads may run
+ * concurrently. The status and headers of each response are settled under the lock, so that a failure is reported
+ * before anything is sent, and the JSON body is then streamed with the chunked encoding under the read lock only, a
+ * command downgrading its lock first, so that a slow client holds up the commands but never the other reads. Each
+ * ensemble has a version counter, bumped on every change, from which its ETag is derived.
+ * <ul>
+ *     <li>{@code GET /ensembles} lists the ensembles.</li>
+ *     <li>{@code POST /ensembles?type=&id=&name=} creates an ensemble.</li>
+ *     <li>{@code GET /ensembles/{id}} shows an ensemble, honoring {@code If-None-Match}.</li>
+ *     <li>{@code PUT /ensembles/{id}/name?name=} changes the name of an ensemble.</li>
+ *     <li>{@code POST /ensembles/{id}/musicians?id=&name=&role=} adds a musician.</li>
+ *     <li>{@code PUT /ensembles/{id}/musicians/{musicianId}?role=} modifies the role of a musician.</li>
+ *     <li>{@code DELETE /ensembles/{id}/musicians/{musicianId}} deletes a musician.</li>
+ *     <li>{@code POST /undo}, {@code POST /redo} and {@code GET /history} operate on the undo/redo history, of the
+ *     ensemble given by {@code ?ensemble=} in the per-ensemble mode.</li>
+ * </ul>
+ * Parameters are taken from the query string or a form-encoded body.
+ */
+class HttpApi implements ChangeListener
+{
+    private final Assignment assignment;
+    private final EnsembleStore ensembleStore;
+    private final Histories histories;
+
+    /** Commands take the write lock, reads take the read lock. */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** The version of each ensemble, bumped on every change. */
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    /** Distinguishes the ETags of this process from those of an earlier one. */
+    private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+    private HttpServer server;
+
+    HttpApi(Assignment assignment, EnsembleStore ensembleStore, Histories histories)
+    {
+        this.assignment = assignment;
+        this.ensembleStore = ensembleStore;
+        this.histories = histories;
+    }
+
+    /**
+     * Starts serving the API.
+     *
+     * @param port The port to listen on.
+     * @throws IOException If the port cannot be bound.
+     */
+    void start(int port) throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/ensembles", exchange -> handle(exchange, this::handleEnsembles));
+        server.createContext("/undo", exchange -> handle(exchange, this::handleUndo));
+        server.createContext("/redo", exchange -> handle(exchange, this::handleRedo));
+        server.createContext("/history", exchange -> handle(exchange, this::handleHistory));
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+    }
+
+    @Override
+    public void changed(Change change)
+    {
+        versions.merge(change.ensembleId(), 1L, Long::sum);
+    }
+
+    private void handleEnsembles(HttpExchange exchange, Map<String, String> parameters) throws IOException
+    {
+        var segments = exchange.getRequestURI().getPath().replaceFirst("^/ensembles/?", "").split("/");
+        var method = exchange.getRequestMethod();
+        if (segments[0].isEmpty())
+        {
+            switch (method)
+            {
+                case "GET" -> respond(exchange, false, this::listEnsembles);
+                case "POST" -> respond(exchange, true, () -> createEnsemble(parameters));
+                default -> Response.error(405, "Method not allowed.").send(exchange);
+            }
+            return;
+        }
+
+        var ensembleId = segments[0];
+        var route = (segments.length == 1) ? "" : segments[1];
+        var ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        switch (method + " " + route + ((segments.length == 3) ? "/*" : ""))
+        {
+            case "GET " -> respond(exchange, false, () -> showEnsemble(ensembleId, ifNoneMatch));
+            case "PUT name" -> respond(exchange, true, () -> runOnEnsemble(ensembleId, 200, "cn",
+                    parameters.get("name")));
+            case "POST musicians" -> respond(exchange, true, () -> addMusician(ensembleId, parameters.get("id"),
+                    parameters.get("name"), parameters.get("role")));
+            case "PUT musicians/*" -> respond(exchange, true, () -> runOnEnsemble(ensembleId, 200, "m", segments[2],
+                    parameters.get("role")));
+            case "DELETE musicians/*" -> respond(exchange, true, () -> runOnEnsemble(ensembleId, 200, "d", segments[2]));
+            default -> Response.error(404, "Not found.").send(exchange);
+        }
+    }
+
+    /**
+     * Settles a response under the lock, the write lock for a command, and streams it under the read lock, the write
+     * lock being downgraded first so that the reads may go on meanwhile.
+     *
+     * @param isCommand Whether the response runs a command.
+     */
+    private void respond(HttpExchange exchange, boolean isCommand, ResponseSupplier supplier) throws IOException
+    {
+        var lockHeld = isCommand ? lock.writeLock() : lock.readLock();
+        lockHeld.lock();
+        try
+        {
+            var response = supplier.get();
+            if (isCommand)
+            {
+                lock.readLock().lock();
+                lockHeld.unlock();
+                lockHeld = lock.readLock();
+            }
+            response.send(exchange);
+        }
+        finally
+        {
+            lockHeld.unlock();
+        }
+    }
+
+    private Response listEnsembles()
+    {
+        return Response.json(200, null, writer ->
+        {
+            writer.write('[');
+            var isFirst = true;
+            for (var ensemble : ensembleStore.summaries())
+            {
+                writer.write(isFirst ? "\n  {\"id\": " : ",\n  {\"id\": ");
+                isFirst = false;
+                JsonEnsembleExporter.writeString(writer, ensemble.getEnsembleID());
+                writer.write(", \"type\": ");
+                JsonEnsembleExporter.writeString(writer, ensemble.getType().getLabel());
+                writer.write(", \"name\": ");
+                JsonEnsembleExporter.writeString(writer, ensemble.getName());
+                writer.write(", \"etag\": ");
+                JsonEnsembleExporter.writeString(writer, etag(ensemble.getEnsembleID()));
+                writer.write('}');
+            }
+            writer.write(isFirst ? "]\n" : "\n]\n");
+        });
+    }
+
+    private Response showEnsemble(String ensembleId, String ifNoneMatch)
+    {
+        var ensemble = ensembleStore.get(ensembleId);
+        if (Objects.isNull(ensemble)) { return Response.error(404, "Ensemble ID does not exist!"); }
+
+        var etag = etag(ensembleId);
+        return etag.equals(ifNoneMatch) ? new Response(304, etag, null) : renderEnsemble(200, ensemble);
+    }
+
+    private Response createEnsemble(Map<String, String> parameters)
+    {
+        var ensembleId = parameters.get("id");
+        var error = run(null, "c", parameters.get("type"), ensembleId, parameters.get("name"));
+        return Objects.nonNull(error) ? error : renderEnsemble(201, ensembleStore.get(ensembleId.trim()));
+    }
+
+    private Response addMusician(String ensembleId, String musicianId, String name, String role)
+    {
+        // The ID and the name are entered on a single line, separated by the first comma
+        if (Objects.nonNull(musicianId) && (musicianId.indexOf(',') >= 0))
+        {
+            return Response.error(400, "Musician ID cannot contain a comma!");
+        }
+
+        return runOnEnsemble(ensembleId, 201, "a", Objects.isNull(musicianId) || Objects.isNull(name) ? null
+                : musicianId + ", " + name, role);
+    }
+
+    /**
+     * Runs a command on an ensemble, by making it the active ensemble first.
+     */
+    private Response runOnEnsemble(String ensembleId, int status, String command, String... inputs)
+    {
+        if (!ensembleStore.contains(ensembleId)) { return Response.error(404, "Ensemble ID does not exist!"); }
+
+        var error = run(ensembleId, command, inputs);
+        return Objects.nonNull(error) ? error : renderEnsemble(status, ensembleStore.get(ensembleId));
+    }
+
+    private void handleUndo(HttpExchange exchange, Map<String, String> parameters) throws IOException
+    {
+        handleHistoryCommand(exchange, parameters.get("ensemble"), "u", true, "undone");
+    }
+
+    private void handleRedo(HttpExchange exchange, Map<String, String> parameters) throws IOException
+    {
+        handleHistoryCommand(exchange, parameters.get("ensemble"), "r", false, "redone");
+    }
+
+    private void handleHistoryCommand(HttpExchange exchange, String ensembleId, String command, boolean isUndo,
+                                      String field) throws IOException
+    {
+        if (!exchange.getRequestMethod().equals("POST"))
+        {
+            Response.error(405, "Method not allowed.").send(exchange);
+            return;
+        }
+        if (histories.isPerEnsemble() && Objects.isNull(ensembleId))
+        {
+            Response.error(400, "Missing parameter.").send(exchange);
+            return;
+        }
+
+        respond(exchange, true, () -> runHistory(ensembleId, command, isUndo, field));
+    }
+
+    /**
+     * Undoes or redoes a command, in the history of the given ensemble in the per-ensemble mode.
+     */
+    private Response runHistory(String ensembleId, String command, boolean isUndo, String field)
+    {
+        if (histories.isPerEnsemble() && !ensembleStore.contains(ensembleId))
+        {
+            return Response.error(404, "Ensemble ID does not exist!");
+        }
+
+        // The history resolved as the command does, redo falling back to the creation of an ensemble undone last
+        String description = null;
+        var history = isUndo ? histories.get(ensembleId) : histories.getRedoHistory(ensembleId);
+        if (Objects.nonNull(history))
+        {
+            synchronized (history)
+            {
+                var stack = isUndo ? history.undoStack : history.redoStack;
+                description = stack.isEmpty() ? null : stack.peek().toString();
+            }
+        }
+
+        var error = run(histories.isPerEnsemble() ? ensembleId : null, command);
+        if (Objects.nonNull(error)) { return error; }
+
+        var described = description;
+        return Response.json(200, null, writer ->
+        {
+            writer.write("{\"" + field + "\": ");
+            JsonEnsembleExporter.writeString(writer, described);
+            writer.write("}\n");
+        });
+    }
+
+    private void handleHistory(HttpExchange exchange, Map<String, String> parameters) throws IOException
+    {
+        if (!exchange.getRequestMethod().equals("GET"))
+        {
+            Response.error(405, "Method not allowed.").send(exchange);
+            return;
+        }
+
+        respond(exchange, false, () ->
+        {
+            var history = Objects.requireNonNullElseGet(histories.get(parameters.get("ensemble")), History::new);
+            return Response.json(200, null, writer ->
+            {
+                synchronized (history)
+                {
+                    writer.write("{\"undo\": ");
+                    writeCommands(writer, history.undoStack);
+                    writer.write(", \"redo\": ");
+                    writeCommands(writer, history.redoStack);
+                }
+                writer.write(", \"log\": [");
+                var log = histories.getLog();
+                for (var i = 0; i < log.size(); i++)
+                {
+                    if (i > 0) { writer.write(", "); }
+                    JsonEnsembleExporter.writeString(writer, log.get(i));
+                }
+                writer.write("]}\n");
+            });
+        });
+    }
+
+    private static void writeCommands(Writer writer, Stack<Command> stack) throws IOException
+    {
+        writer.write('[');
+        for (var i = 0; i < stack.size(); i++)
+        {
+            if (i > 0) { writer.write(", "); }
+            JsonEnsembleExporter.writeString(writer, stack.get(i).toString());
+        }
+        writer.write(']');
+    }
+
+    /**
+     * Executes a single command with its prompts answered by the inputs, one per line, on the given ensemble made the
+     * active ensemble first. An input that would span several lines is refused, so that it cannot answer the prompts
+     * that follow. Must be called with the write lock held, the output being discarded.
+     *
+     * @param ensembleId The ID of the ensemble to make active, {@code null} to leave the active ensemble as it is.
+     * @return The error response if the command failed, {@code null} if it succeeded.
+     */
+    private Response run(String ensembleId, String command, String... inputs)
+    {
+        var script = new StringBuilder();
+        for (var input : inputs)
+        {
+            if (Objects.isNull(input)) { return Response.error(400, "Missing parameter."); }
+            if (hasLineTerminator(input)) { return Response.error(400, "Parameter cannot span several lines!"); }
+            script.append(input).append('\n');
+        }
+
+        var errors = new ByteArrayOutputStream();
+        assignment.reader = new ConsoleReader(script.toString());
+        assignment.out = new ConsoleWriter(OutputStream.nullOutputStream(), true);
+        assignment.err = new ConsoleWriter(errors, true);
+        try
+        {
+            if (Objects.nonNull(ensembleId)) { assignment.setActiveEnsemble(ensembleId); }
+            assignment.execute(command);
+        }
+        catch (NoSuchElementException ex)
+        {
+            assignment.err.println("Missing parameter.");
+        }
+
+        return (errors.size() > 0) ? Response.error(400, errors.toString(StandardCharsets.UTF_8).strip()) : null;
+    }
+
+    /**
+     * Checks whether a parameter holds a line terminator, of the console or of Unicode.
+     */
+    private static boolean hasLineTerminator(String input)
+    {
+        for (var i = 0; i < input.length(); i++)
+        {
+            switch (input.charAt(i))
+            {
+                case '\r', '\n', '\u0085', '\u2028', '\u2029' -> { return true; }
+                default -> {}
+            }
+        }
+
+        return false;
+    }
+
+    private Response renderEnsemble(int status, Ensemble ensemble)
+    {
+        return Response.json(status, etag(ensemble.getEnsembleID()), writer ->
+        {
+            new JsonEnsembleExporter(writer).writeEnsemble(ensemble);
+            writer.write('\n');
+        });
+    }
+
+    private String etag(String ensembleId)
+    {
+        return String.format("\"%s-%d\"", epoch, versions.getOrDefault(ensembleId, 0L));
+    }
+
+    /**
+     * Parses the request parameters and calls the handler, sending a server error if it fails.
+     */
+    private static void handle(HttpExchange exchange, Handler handler) throws IOException
+    {
+        try (exchange)
+        {
+            var parameters = new HashMap<String, String>();
+            parseParameters(exchange.getRequestURI().getRawQuery(), parameters);
+
+            var contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            if (Objects.nonNull(contentType) && contentType.startsWith("application/x-www-form-urlencoded"))
+            {
+                parseParameters(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8), parameters);
+            }
+
+            handler.handle(exchange, parameters);
+        }
+        catch (RuntimeException ex)
+        {
+            if (exchange.getResponseCode() < 0) { Response.error(500, "Internal server error.").send(exchange); }
+            throw ex;
+        }
+    }
+
+    private static void parseParameters(String encoded, Map<String, String> parameters)
+    {
+        if (Objects.isNull(encoded) || encoded.isEmpty()) { return; }
+
+        for (var pair : encoded.split("&"))
+        {
+            var separator = pair.indexOf('=');
+            var name = (separator < 0) ? pair : pair.substring(0, separator);
+            var value = (separator < 0) ? "" : pair.substring(separator + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler
+    {
+        void handle(HttpExchange exchange, Map<String, String> parameters) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ResponseSupplier
+    {
+        Response get() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface JsonBody
+    {
+        void write(Writer writer) throws IOException;
+    }
+
+    /**
+     * A response settled before anything is sent, its JSON body being written only as it is streamed.
+     *
+     * @param status The status code.
+     * @param etag   The ETag header, {@code null} if none.
+     * @param body   The writer of the JSON body, {@code null} if none.
+     */
+    private record Response(int status, String etag, JsonBody body)
+    {
+        static Response json(int status, String etag, JsonBody body)
+        {
+            return new Response(status, etag, body);
+        }
+
+        static Response error(int status, String message)
+        {
+            return json(status, null, writer ->
+            {
+                writer.write("{\"error\": ");
+                JsonEnsembleExporter.writeString(writer, message);
+                writer.write("}\n");
+            });
+        }
+
+        void send(HttpExchange exchange) throws IOException
+        {
+            if (Objects.nonNull(etag)) { exchange.getResponseHeaders().set("ETag", etag); }
+            if (Objects.isNull(body))
+            {
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, 0);
+            try (var writer = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8)))
+            {
+                body.write(writer);
+            }
+        }
+    }
+}
@@ -0,0 +1,400 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An asynchronous writer of {@link Change}s to a journal file.
+ * <p>
+ * Changes are encoded on the calling thread and handed to a lock-free queue. A dedicated writer thread drains the
+ * queue, writes each batch with one sequential write, and forces it to the disk once per batch. The changes of each
+ * command are followed by a commit line, {@code @} and its timestamp, so that the versions can be replayed too.
+ */
+class Journal implements ChangeListener, AutoCloseable
+{
+    /** The size of the write buffer, a batch larger than this will be written in several writes. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** The first character of a commit line. */
+    private static final char COMMIT = '@';
+
+    private final FileChannel channel;
+    private final Acknowledgement acknowledgement;
+    private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final Thread writer;
+
+    private volatile boolean closed = false;
+    private volatile IOException failure = null;
+
+    // The metrics, written by the writer thread only
+    private long batchCount = 0;
+    private long recordCount = 0;
+    private long maxBatchSize = 0;
+    private long totalLatency = 0;
+    private long maxLatency = 0;
+
+    /**
+     * Opens a journal for appending, the file is created if it does not exist yet. The changes left after the last
+     * commit by an interrupted command or write are cut off first, even if the journal was not replayed.
+     *
+     * @param path            The path of the journal file.
+     * @param acknowledgement When should {@link #committed(long)} return.
+     * @throws IOException If the file cannot be opened.
+     */
+    Journal(Path path, Acknowledgement acknowledgement) throws IOException
+    {
+        try (var tail = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            cutUncommittedTail(tail);
+        }
+        channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.acknowledgement = Objects.requireNonNull(acknowledgement);
+
+        writer = new Thread(this::write, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Replays the committed changes in a journal file onto a store of {@link Ensemble}s, a command at a time. The
+     * changes after the last commit, left behind by a command or write interrupted, are never applied but cut off, so
+     * that no half of a command is replayed and the changes appended afterwards start on a line of their own. A journal
+     * is to be replayed before it is opened for appending.
+     *
+     * @param path             The path of the journal file.
+     * @param ensembleStore    The store to replay onto.
+     * @param ensembleRegistry The registry of the ensemble types.
+     * @param changeListener   The listener to the changes and commits replayed.
+     * @return The number of changes replayed.
+     * @throws IOException If the file cannot be read or is corrupted.
+     */
+    static long replay(Path path, EnsembleStore ensembleStore, EnsembleRegistry ensembleRegistry,
+                       ChangeListener changeListener) throws IOException
+    {
+        if (Files.notExists(path)) { return 0; }
+
+        var count = 0L;
+        // The changes read since the last commit, applied once committed
+        var pending = new ArrayList<Change>();
+        // The offset just after the last commit
+        var committedLength = 0L;
+        var length = 0L;
+        try (var input = new BufferedInputStream(Files.newInputStream(path)))
+        {
+            var line = new ByteArrayOutputStream();
+            int b;
+            while ((b = input.read()) >= 0)
+            {
+                if (b != '\n')
+                {
+                    line.write(b);
+                    continue;
+                }
+
+                try
+                {
+                    var text = line.toString(StandardCharsets.UTF_8);
+                    if (!text.isEmpty() && (text.charAt(0) == COMMIT))
+                    {
+                        var timestamp = Long.parseLong(text, 1, text.length(), 10);
+                        for (var change : pending)
+                        {
+                            change.apply(ensembleStore, ensembleRegistry);
+                            changeListener.changed(change);
+                            count++;
+                        }
+                        changeListener.committed(timestamp);
+                        pending.clear();
+                        committedLength = length + line.size() + 1;
+                    }
+                    else
+                    {
+                        pending.add(Change.decode(text));
+                    }
+                }
+                catch (RuntimeException ex)
+                {
+                    throw new IOException(String.format("Corrupted journal after change %d", count), ex);
+                }
+                length += line.size() + 1;
+                line.reset();
+            }
+        }
+
+        if (committedLength < Files.size(path))
+        {
+            try (var channel = FileChannel.open(path, StandardOpenOption.WRITE))
+            {
+                truncate(channel, committedLength);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Cuts off the changes after the last commit of a journal not replayed, finding the last line terminator of a
+     * commit line from the end.
+     */
+    private static void cutUncommittedTail(FileChannel channel) throws IOException
+    {
+        var buffer = ByteBuffer.allocate(4096);
+        var end = channel.size();
+        // The terminator of the line after the one being read, -1 if none, and the byte read just before
+        var lineEnd = -1L;
+        var next = (byte) 0;
+        while (end > 0)
+        {
+            var start = Math.max(0, end - buffer.capacity());
+            buffer.clear().limit((int) (end - start));
+            while (buffer.hasRemaining())
+            {
+                if (channel.read(buffer, start + buffer.position()) < 0) { throw new EOFException(); }
+            }
+
+            for (var i = (int) (end - start) - 1; i >= 0; i--)
+            {
+                var b = buffer.get(i);
+                if (b == '\n')
+                {
+                    if ((lineEnd >= 0) && (next == COMMIT))
+                    {
+                        cutAfter(channel, lineEnd);
+                        return;
+                    }
+                    lineEnd = start + i;
+                }
+                next = b;
+            }
+            end = start;
+        }
+
+        // The first line starts the file rather than following a terminator
+        cutAfter(channel, ((lineEnd >= 0) && (next == COMMIT)) ? lineEnd : -1);
+    }
+
+    private static void cutAfter(FileChannel channel, long lineEnd) throws IOException
+    {
+        if (lineEnd + 1 < channel.size()) { truncate(channel, lineEnd + 1); }
+    }
+
+    private static void truncate(FileChannel channel, long length) throws IOException
+    {
+        channel.truncate(length);
+        channel.force(true);
+    }
+
+    @Override
+    public void changed(Change change)
+    {
+        if (closed) { throw new IllegalStateException("Journal is closed"); }
+
+        queue.offer(new Entry((change.encode() + '\n').getBytes(StandardCharsets.UTF_8), true));
+        LockSupport.unpark(writer);
+
+        var failure = this.failure;
+        if (Objects.nonNull(failure)) { throw new UncheckedIOException("Failed to write the journal", failure); }
+    }
+
+    /**
+     * Queues the commit of the changes of a command, waiting for it and so all of them to be durable if requested, so
+     * that a command changing many musicians is forced to the disk once.
+     */
+    @Override
+    public void committed(long timestamp)
+    {
+        if (closed) { throw new IllegalStateException("Journal is closed"); }
+
+        var entry = new Entry((COMMIT + Long.toString(timestamp) + '\n').getBytes(StandardCharsets.UTF_8), false);
+        queue.offer(entry);
+        LockSupport.unpark(writer);
+
+        if (acknowledgement == Acknowledgement.DURABLE)
+        {
+            synchronized (entry)
+            {
+                while (!entry.durable)
+                {
+                    try
+                    {
+                        entry.wait();
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+
+        var failure = this.failure;
+        if (Objects.nonNull(failure)) { throw new UncheckedIOException("Failed to write the journal", failure); }
+    }
+
+    /**
+     * Writes out all the queued changes, stops the writer thread and closes the file.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        closed = true;
+        LockSupport.unpark(writer);
+        try
+        {
+            writer.join();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            channel.close();
+        }
+
+        if (Objects.nonNull(failure)) { throw failure; }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Journal: %d change(s) in %d batch(es), batch size avg %.1f / max %d, commit latency avg %d us / max %d us",
+                recordCount, batchCount, (batchCount == 0) ? 0.0 : (double) recordCount / batchCount, maxBatchSize,
+                (recordCount == 0) ? 0 : TimeUnit.NANOSECONDS.toMicros(totalLatency / recordCount),
+                TimeUnit.NANOSECONDS.toMicros(maxLatency));
+    }
+
+    /**
+     * The body of the writer thread.
+     */
+    private void write()
+    {
+        var buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        var batch = new ArrayList<Entry>();
+        while (true)
+        {
+            var entry = queue.poll();
+            if (Objects.isNull(entry))
+            {
+                if (closed && queue.isEmpty()) { return; }
+                LockSupport.park(this);
+                continue;
+            }
+
+            // Collect everything queued so far into one batch
+            do
+            {
+                batch.add(entry);
+            }
+            while (Objects.nonNull(entry = queue.poll()));
+
+            // Once the journal failed, the changes are only acknowledged, so that no caller waits forever
+            if (Objects.isNull(failure))
+            {
+                try
+                {
+                    for (var queued : batch)
+                    {
+                        if (queued.bytes.length > buffer.remaining()) { flush(buffer); }
+                        if (queued.bytes.length > buffer.capacity())
+                        {
+                            writeFully(ByteBuffer.wrap(queued.bytes));
+                        }
+                        else
+                        {
+                            buffer.put(queued.bytes);
+                        }
+                    }
+
+                    flush(buffer);
+                    channel.force(false);
+                }
+                catch (IOException ex)
+                {
+                    failure = ex;
+                    buffer.clear();
+                }
+            }
+
+            var now = System.nanoTime();
+            var changeCount = 0;
+            for (var committed : batch)
+            {
+                if (committed.isChange)
+                {
+                    var latency = now - committed.enqueuedAt;
+                    totalLatency += latency;
+                    maxLatency = Math.max(maxLatency, latency);
+                    changeCount++;
+                }
+
+                synchronized (committed)
+                {
+                    committed.durable = true;
+                    committed.notifyAll();
+                }
+            }
+
+            if (changeCount > 0) { batchCount++; }
+            recordCount += changeCount;
+            maxBatchSize = Math.max(maxBatchSize, changeCount);
+            batch.clear();
+        }
+    }
+
+    private void flush(ByteBuffer buffer) throws IOException
+    {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * When the changes of a command handed to the journal are acknowledged.
+     */
+    enum Acknowledgement
+    {
+        /** As soon as the changes are queued. */
+        ENQUEUE,
+        /** After the changes are written and forced to the disk, once the command commits. */
+        DURABLE
+    }
+
+    /**
+     * An encoded change or commit waiting to be written.
+     */
+    private static final class Entry
+    {
+        private final byte[] bytes;
+        /** Whether it is a change rather than a commit, only the changes being measured. */
+        private final boolean isChange;
+        private final long enqueuedAt = System.nanoTime();
+        private boolean durable = false;
+
+        Entry(byte[] bytes, boolean isChange)
+        {
+            this.bytes = bytes;
+            this.isChange = isChange;
+        }
+    }
+}
@@ -1,23 +1,90 @@
+import java.util.Objects;
+
+/**
+ * A musician, held either on-heap or off-heap in a {@link MusicianArena}, in which case this is a view of the record
+ * in the arena.
+ */
 class Musician
 {
-    private final String musicianID;
+    private String musicianID;
     private String mName;
     private int role;
 
+    /** The arena holding the musician, {@code null} if it is held on-heap. */
+    private MusicianArena arena;
+    /** The handle of the record in the arena. */
+    private long handle;
+
     Musician(String mID)
     {
         musicianID = mID;
     }
 
-    String getMID() { return musicianID; }
+    /**
+     * Creates a view of a musician held in an arena.
+     */
+    Musician(MusicianArena arena, long handle)
+    {
+        this.arena = arena;
+        this.handle = handle;
+    }
+
+    String getMID() { return Objects.isNull(arena) ? musicianID : arena.getId(handle); }
+
+    int getRole() { return Objects.isNull(arena) ? role : arena.getRole(handle); }
+
+    void setRole(int role)
+    {
+        if (Objects.isNull(arena))
+        {
+            this.role = role;
+        }
+        else
+        {
+            arena.setRole(handle, role);
+        }
+    }
+
+    String getName() { return Objects.isNull(arena) ? mName : arena.getName(handle); }
 
-    int getRole() { return role; }
+    void setName(String name)
+    {
+        if (Objects.nonNull(arena)) { throw new IllegalStateException("Musician held off-heap cannot be renamed"); }
+        mName = name;
+    }
 
-    void setRole(int role) { this.role = role; }
+    /**
+     * Turns the musician into a view of a record in an arena, dropping the fields held on-heap.
+     */
+    void attach(MusicianArena arena, long handle)
+    {
+        musicianID = null;
+        mName = null;
+        this.arena = arena;
+        this.handle = handle;
+    }
 
-    String getName() { return mName; }
+    /**
+     * Copies the record back on-heap before it is freed from the arena.
+     */
+    void detach()
+    {
+        musicianID = arena.getId(handle);
+        mName = arena.getName(handle);
+        role = arena.getRole(handle);
+        arena = null;
+    }
 
-    void setName(String name) { mName = name; }
+    /**
+     * Checks whether the musician is a view of a record in an arena.
+     *
+     * @param arena The arena.
+     * @return The handle of the record, or {@code -1} if it is not a view of the arena.
+     */
+    long getHandle(MusicianArena arena)
+    {
+        return (this.arena == arena) ? handle : -1;
+    }
 
     static class Memento
     {
@@ -27,12 +94,12 @@ class Musician
         Memento(Musician musician)
         {
             this.musician = musician;
-            role = musician.role;
+            role = musician.getRole();
         }
 
         void restore()
         {
-            musician.role = role;
+            musician.setRole(role);
         }
     }
 }
@@ -0,0 +1,387 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * An arena holding musician records off-heap, in direct buffers allocated in slabs.
+ * <p>
+ * Each record takes a slot of a power-of-two size. Freed slots are kept in per-size free lists and reused by later
+ * records of the same size class, so that the slabs do not grow when musicians are repeatedly dropped and added.
+ * A record is referred to by a handle, made of the slab index in the upper half and the offset in the lower half.
+ * <p>
+ * The musicians handed out are views of the records. A view is kept weakly in a table indexed by the slot while it is
+ * referenced elsewhere, e.g. by a command in the undo stack, so that the same instance is returned for the same record,
+ * and it is copied back on-heap when its record is freed. The views collected are cleared from the table as the arena
+ * is used. The musicians only read, e.g. to be shown, are read through a reusable flyweight view instead, see
+ * {@link OffHeapMusicianList#flyweights()}.
+ * <p>
+ * Allocating, freeing and viewing the records are synchronized, while the records are read without locking: the slabs
+ * are published through a volatile array, and the role, the only field changed in place, is accessed atomically.
+ */
+class MusicianArena
+{
+    /** The size of a slab, also the largest slot size. */
+    private static final int SLAB_SIZE = 1 << 20;
+    /** The smallest slot size, as a power of two. */
+    private static final int MIN_SLOT_SHIFT = 5;
+    /** The number of slot sizes. */
+    private static final int SLOT_CLASSES = Integer.numberOfTrailingZeros(SLAB_SIZE) - MIN_SLOT_SHIFT + 1;
+
+    // The layout of a record: role, slot class, ID length, name length, ID, name
+    private static final int ROLE_OFFSET = 0;
+    private static final int SLOT_CLASS_OFFSET = 4;
+    private static final int ID_LENGTH_OFFSET = 6;
+    private static final int NAME_LENGTH_OFFSET = 8;
+    private static final int HEADER_SIZE = 10;
+
+    /** The atomic access to the role of a record. */
+    private static final VarHandle ROLE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    /** The slabs, replaced by a longer copy when a slab is added, so that they can be read without locking. */
+    private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+    /** The position of the unused space in the last slab. */
+    private int slabPosition = SLAB_SIZE;
+
+    private final long[][] freeLists = new long[SLOT_CLASSES][];
+    private final int[] freeCounts = new int[SLOT_CLASSES];
+
+    private long recordCount = 0;
+
+    /** The views of each slab, indexed by the offset in slots of the smallest size. */
+    private ViewReference[][] views = new ViewReference[0][];
+    private final ReferenceQueue<Musician> viewQueue = new ReferenceQueue<>();
+
+    /**
+     * Moves a musician held on-heap into a new record, turning it into a view of the record.
+     *
+     * @return The handle of the record.
+     * @throws IllegalArgumentException If the musician is already held off-heap, or its ID or name is too long.
+     */
+    synchronized long allocate(Musician musician)
+    {
+        if (musician.getHandle(this) >= 0) { throw new IllegalArgumentException("Musician is already held off-heap"); }
+        purgeViews();
+
+        var idBytes = musician.getMID().getBytes(StandardCharsets.UTF_8);
+        var nameBytes = musician.getName().getBytes(StandardCharsets.UTF_8);
+        if ((idBytes.length > Character.MAX_VALUE) || (nameBytes.length > Character.MAX_VALUE))
+        {
+            throw new IllegalArgumentException("Musician ID or name is too long");
+        }
+
+        var slotClass = slotClass(HEADER_SIZE + idBytes.length + nameBytes.length);
+        var handle = (freeCounts[slotClass] > 0) ? freeLists[slotClass][--freeCounts[slotClass]] : bump(slotClass);
+
+        var slab = slab(handle);
+        var offset = offset(handle);
+        slab.putInt(offset + ROLE_OFFSET, musician.getRole());
+        slab.put(offset + SLOT_CLASS_OFFSET, (byte) slotClass);
+        slab.putChar(offset + ID_LENGTH_OFFSET, (char) idBytes.length);
+        slab.putChar(offset + NAME_LENGTH_OFFSET, (char) nameBytes.length);
+        slab.put(offset + HEADER_SIZE, idBytes);
+        slab.put(offset + HEADER_SIZE + idBytes.length, nameBytes);
+        recordCount++;
+
+        musician.attach(this, handle);
+        views[slabIndex(handle)][slotIndex(handle)] = new ViewReference(musician, handle, viewQueue);
+        return handle;
+    }
+
+    /**
+     * Gets the view of a record, the same instance as long as it is referenced.
+     */
+    synchronized Musician view(long handle)
+    {
+        purgeViews();
+        var slabViews = views[slabIndex(handle)];
+        var reference = slabViews[slotIndex(handle)];
+        var view = Objects.nonNull(reference) ? reference.get() : null;
+        if (Objects.isNull(view))
+        {
+            view = new Musician(this, handle);
+            slabViews[slotIndex(handle)] = new ViewReference(view, handle, viewQueue);
+        }
+
+        return view;
+    }
+
+    /**
+     * Frees a record, its slot is reused by a later record of the same size class.
+     *
+     * @return The musician copied back on-heap, the view of the record if there is one.
+     */
+    synchronized Musician free(long handle)
+    {
+        var slabViews = views[slabIndex(handle)];
+        var reference = slabViews[slotIndex(handle)];
+        var musician = Objects.nonNull(reference) ? reference.get() : null;
+        if (Objects.isNull(musician)) { musician = new Musician(this, handle); }
+        musician.detach();
+        slabViews[slotIndex(handle)] = null;
+
+        var slotClass = slab(handle).get(offset(handle) + SLOT_CLASS_OFFSET);
+        var freeList = freeLists[slotClass];
+        if (Objects.isNull(freeList))
+        {
+            freeList = freeLists[slotClass] = new long[16];
+        }
+        else if (freeCounts[slotClass] == freeList.length)
+        {
+            freeList = freeLists[slotClass] = Arrays.copyOf(freeList, freeList.length * 2);
+        }
+
+        freeList[freeCounts[slotClass]++] = handle;
+        recordCount--;
+        return musician;
+    }
+
+    String getId(long handle)
+    {
+        var slab = slab(handle);
+        var offset = offset(handle);
+        return getString(slab, offset + HEADER_SIZE, slab.getChar(offset + ID_LENGTH_OFFSET));
+    }
+
+    String getName(long handle)
+    {
+        var slab = slab(handle);
+        var offset = offset(handle);
+        return getString(slab, offset + HEADER_SIZE + slab.getChar(offset + ID_LENGTH_OFFSET), slab.getChar(offset + NAME_LENGTH_OFFSET));
+    }
+
+    int getRole(long handle)
+    {
+        return (int) ROLE.getAcquire(slab(handle), offset(handle) + ROLE_OFFSET);
+    }
+
+    void setRole(long handle, int role)
+    {
+        ROLE.setRelease(slab(handle), offset(handle) + ROLE_OFFSET, role);
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("Musician arena: %d record(s) in %d slab(s) of %d KiB", recordCount, slabs.length, SLAB_SIZE / 1024);
+    }
+
+    private static int slotClass(int size)
+    {
+        var shift = Math.max(MIN_SLOT_SHIFT, Integer.SIZE - Integer.numberOfLeadingZeros(size - 1));
+        return shift - MIN_SLOT_SHIFT;
+    }
+
+    /**
+     * Takes a new slot from the unused space of the last slab, allocating a new slab if it is full.
+     */
+    private long bump(int slotClass)
+    {
+        var slotSize = 1 << (slotClass + MIN_SLOT_SHIFT);
+        if (slabPosition + slotSize > SLAB_SIZE)
+        {
+            var grown = Arrays.copyOf(slabs, slabs.length + 1);
+            grown[slabs.length] = ByteBuffer.allocateDirect(SLAB_SIZE);
+            views = Arrays.copyOf(views, grown.length);
+            views[slabs.length] = new ViewReference[SLAB_SIZE >> MIN_SLOT_SHIFT];
+            slabs = grown;
+            slabPosition = 0;
+        }
+
+        var handle = ((long) (slabs.length - 1) << Integer.SIZE) | slabPosition;
+        slabPosition += slotSize;
+        return handle;
+    }
+
+    /**
+     * Clears the views no longer referenced anywhere from the table.
+     */
+    private void purgeViews()
+    {
+        ViewReference reference;
+        while (Objects.nonNull(reference = (ViewReference) viewQueue.poll()))
+        {
+            var slabViews = views[slabIndex(reference.handle)];
+            if (slabViews[slotIndex(reference.handle)] == reference) { slabViews[slotIndex(reference.handle)] = null; }
+        }
+    }
+
+    private ByteBuffer slab(long handle)
+    {
+        return slabs[slabIndex(handle)];
+    }
+
+    private static int slabIndex(long handle)
+    {
+        return (int) (handle >>> Integer.SIZE);
+    }
+
+    private static int slotIndex(long handle)
+    {
+        return offset(handle) >> MIN_SLOT_SHIFT;
+    }
+
+    private static int offset(long handle)
+    {
+        return (int) handle;
+    }
+
+    private static String getString(ByteBuffer slab, int offset, int length)
+    {
+        var bytes = new byte[length];
+        slab.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class ViewReference extends WeakReference<Musician>
+    {
+        private final long handle;
+
+        ViewReference(Musician musician, long handle, ReferenceQueue<Musician> queue)
+        {
+            super(musician, queue);
+            this.handle = handle;
+        }
+    }
+}
+
+/**
+ * A list of musicians held in a {@link MusicianArena}, keeping only the handles of the records on-heap.
+ */
+class OffHeapMusicianList extends AbstractList<Musician> implements RandomAccess
+{
+    private final MusicianArena arena;
+    private long[] handles = new long[8];
+    private int size = 0;
+
+    OffHeapMusicianList(MusicianArena arena)
+    {
+        this.arena = arena;
+    }
+
+    /**
+     * Checks whether the musicians are held in an arena.
+     */
+    boolean isHeldIn(MusicianArena arena)
+    {
+        return this.arena == arena;
+    }
+
+    @Override
+    public Musician get(int index)
+    {
+        Objects.checkIndex(index, size);
+        return arena.view(handles[index]);
+    }
+
+    /**
+     * Points a flyweight view at the musician at an index, to be read only until it is pointed elsewhere.
+     *
+     * @param index     The index of the musician.
+     * @param flyweight The flyweight view, created by {@link #newFlyweight()}.
+     * @return The flyweight view.
+     */
+    Musician get(int index, Musician flyweight)
+    {
+        Objects.checkIndex(index, size);
+        flyweight.attach(arena, handles[index]);
+        return flyweight;
+    }
+
+    Musician newFlyweight()
+    {
+        return new Musician(arena, -1);
+    }
+
+    /**
+     * Gets the view of the musician a flyweight view points at, to be kept.
+     */
+    Musician keep(Musician flyweight)
+    {
+        var handle = flyweight.getHandle(arena);
+        return (handle >= 0) ? arena.view(handle) : flyweight;
+    }
+
+    /**
+     * Gets the musicians to be read only, through a single flyweight view per iteration, moved on at each step.
+     */
+    Iterable<Musician> flyweights()
+    {
+        return () -> new Iterator<>()
+        {
+            private final Musician flyweight = newFlyweight();
+            private int index = 0;
+
+            @Override
+            public boolean hasNext()
+            {
+                return index < size;
+            }
+
+            @Override
+            public Musician next()
+            {
+                if (index >= size) { throw new NoSuchElementException(); }
+                return get(index++, flyweight);
+            }
+        };
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public void add(int index, Musician musician)
+    {
+        Objects.checkIndex(index, size + 1);
+        var handle = arena.allocate(musician);
+
+        if (size == handles.length) { handles = Arrays.copyOf(handles, size * 2); }
+        System.arraycopy(handles, index, handles, index + 1, size - index);
+        handles[index] = handle;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Musician remove(int index)
+    {
+        Objects.checkIndex(index, size);
+        var musician = arena.free(handles[index]);
+
+        System.arraycopy(handles, index + 1, handles, index, size - index - 1);
+        size--;
+        modCount++;
+        return musician;
+    }
+
+    @Override
+    public boolean remove(Object object)
+    {
+        if (!(object instanceof Musician musician)) { return false; }
+
+        var handle = musician.getHandle(arena);
+        for (var i = 0; (handle >= 0) && (i < size); i++)
+        {
+            if (handles[i] == handle)
+            {
+                remove(i);
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,101 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Measures the heap size and GC pauses of holding musicians on-heap against off-heap in a {@link MusicianArena}.
+ * <p>
+ * Usage: {@code java MusicianArenaBenchmark [heap|off-heap] [musician count]}, run each mode in a separate JVM.
+ */
+class MusicianArenaBenchmark
+{
+    private static final int ENSEMBLE_COUNT = 1000;
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        var isOffHeap = (args.length > 0) && args[0].equals("off-heap");
+        var musicianCount = (args.length > 1) ? Integer.parseInt(args[1]) : 2_000_000;
+        var arena = isOffHeap ? new MusicianArena() : null;
+
+        var type = new EnsembleType("o", "orchestra", "OrchestraEnsemble", "Orchestra Ensemble",
+                List.of(new EnsembleType.Role(1, "violinist"), new EnsembleType.Role(2, "cellist")));
+        var ensembles = new Ensemble[ENSEMBLE_COUNT];
+        for (var i = 0; i < ensembles.length; i++)
+        {
+            ensembles[i] = new Ensemble(String.format("E%04d", i), type);
+            ensembles[i].setName("Ensemble " + i);
+            if (Objects.nonNull(arena)) { ensembles[i].holdMusiciansIn(arena); }
+        }
+
+        // Fill the ensembles
+        var start = System.nanoTime();
+        for (var i = 0; i < musicianCount; i++)
+        {
+            var musician = new Musician(String.format("M%08d", i));
+            musician.setName("Musician Number " + i);
+            musician.setRole(1 + (i % 2));
+            ensembles[i % ENSEMBLE_COUNT].addMusician(musician);
+        }
+        var fillTime = System.nanoTime() - start;
+
+        // Churn: drop and add back a tenth of the musicians, with the reads of a show
+        var gcBefore = gcTime();
+        start = System.nanoTime();
+        var checksum = 0L;
+        for (var ensemble : ensembles)
+        {
+            for (var musician : ensemble.readMusicians())
+            {
+                checksum += musician.getRole() + musician.getName().length();
+            }
+
+            var dropped = new ArrayList<Musician>();
+            var count = 0;
+            for (var musician : ensemble.readMusicians())
+            {
+                if (count++ % 10 == 0) { dropped.add(ensemble.keep(musician)); }
+            }
+            for (var musician : dropped) { ensemble.dropMusician(musician); }
+            for (var musician : dropped) { ensemble.addMusician(musician); }
+        }
+        var churnTime = System.nanoTime() - start;
+        var churnGcTime = gcTime() - gcBefore;
+
+        // Collect the garbage and give the arena time to forget the collected views, then time a full collection,
+        // which walks the whole live set, so its pause grows with the number of objects
+        System.gc();
+        Thread.sleep(1000);
+        start = System.nanoTime();
+        System.gc();
+        var fullGcPause = System.nanoTime() - start;
+
+        var heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        System.out.printf("Mode: %s, %,d musicians in %,d ensembles%n", isOffHeap ? "off-heap" : "heap", musicianCount, ENSEMBLE_COUNT);
+        System.out.printf("Fill: %,d ms, churn: %,d ms (GC %,d ms, checksum %d)%n", fillTime / 1_000_000,
+                churnTime / 1_000_000, churnGcTime, checksum);
+        System.out.printf("Heap used after full GC: %,d KiB%n", heap / 1024);
+        System.out.printf("Full GC pause: %,d ms%n", fullGcPause / 1_000_000);
+        System.out.printf("Total GC: %,d collection(s), %,d ms%n", gcCount(), gcTime());
+        if (Objects.nonNull(arena)) { System.out.println(arena); }
+
+        // Keep the ensembles alive until all the measurements are taken
+        Reference.reachabilityFence(ensembles);
+    }
+
+    private static long gcTime()
+    {
+        var time = 0L;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) { time += bean.getCollectionTime(); }
+        return time;
+    }
+
+    private static long gcCount()
+    {
+        var count = 0L;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) { count += bean.getCollectionCount(); }
+        return count;
+    }
+}
@@ -0,0 +1,68 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The command line options of the system, each in the form of {@code --name=value} or {@code --name}.
+ */
+class Options
+{
+    private final Map<String, String> values = new HashMap<>();
+
+    private Options() {}
+
+    /**
+     * Parses the command line arguments.
+     *
+     * @param args  The command line arguments.
+     * @param names The names of the accepted options.
+     * @return The parsed options.
+     * @throws IllegalArgumentException If an argument is malformed or not an accepted option.
+     */
+    static Options parse(String[] args, String... names)
+    {
+        var accepted = Set.of(names);
+        var options = new Options();
+        for (var arg : args)
+        {
+            if (!arg.startsWith("--"))
+            {
+                throw new IllegalArgumentException(String.format("Malformed option: %s", arg));
+            }
+
+            var separator = arg.indexOf('=');
+            var name = (separator < 0) ? arg.substring(2) : arg.substring(2, separator);
+            if (!accepted.contains(name))
+            {
+                throw new IllegalArgumentException(String.format("Unknown option: %s", arg));
+            }
+
+            options.values.put(name, (separator < 0) ? "" : arg.substring(separator + 1));
+        }
+
+        return options;
+    }
+
+    /**
+     * Checks whether an option was given.
+     *
+     * @param name The name of the option.
+     */
+    boolean has(String name)
+    {
+        return values.containsKey(name);
+    }
+
+    /**
+     * Gets the value of an option.
+     *
+     * @param name         The name of the option.
+     * @param defaultValue The value to return if the option was not given or has no value.
+     */
+    String get(String name, String defaultValue)
+    {
+        var value = values.get(name);
+        return (Objects.nonNull(value) && !value.isEmpty()) ? value : defaultValue;
+    }
+}
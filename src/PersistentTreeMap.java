@@ -0,0 +1,196 @@
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * An immutable sorted map, backed by an AVL tree. Updates are persistent by path copying: each one copies only the
+ * O(log n) nodes on the path to the key, and shares the rest of the tree with the map it was made from.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+final class PersistentTreeMap<K extends Comparable<K>, V>
+{
+    private static final PersistentTreeMap<?, ?> EMPTY = new PersistentTreeMap<>(null);
+
+    private final Node<K, V> root;
+
+    private PersistentTreeMap(Node<K, V> root)
+    {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K extends Comparable<K>, V> PersistentTreeMap<K, V> empty()
+    {
+        return (PersistentTreeMap<K, V>) EMPTY;
+    }
+
+    int size() { return size(root); }
+
+    /**
+     * Gets the value of a key.
+     *
+     * @return The value, or {@code null} if the key is absent.
+     */
+    V get(K key)
+    {
+        var node = root;
+        while (Objects.nonNull(node))
+        {
+            var comparison = key.compareTo(node.key);
+            if (comparison == 0) { return node.value; }
+            node = (comparison < 0) ? node.left : node.right;
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns a map with a key set to a value.
+     */
+    PersistentTreeMap<K, V> put(K key, V value)
+    {
+        return new PersistentTreeMap<>(put(root, Objects.requireNonNull(key), value));
+    }
+
+    /**
+     * Returns a map without a key.
+     */
+    PersistentTreeMap<K, V> remove(K key)
+    {
+        var root = remove(this.root, key);
+        return (root == this.root) ? this : new PersistentTreeMap<>(root);
+    }
+
+    /**
+     * Iterates the values in the order of their keys.
+     */
+    Iterable<V> values()
+    {
+        return () -> new Iterator<>()
+        {
+            private final ArrayDeque<Node<K, V>> path = new ArrayDeque<>();
+
+            {
+                descend(root);
+            }
+
+            @Override
+            public boolean hasNext()
+            {
+                return !path.isEmpty();
+            }
+
+            @Override
+            public V next()
+            {
+                if (path.isEmpty()) { throw new NoSuchElementException(); }
+
+                var node = path.pop();
+                descend(node.right);
+                return node.value;
+            }
+
+            private void descend(Node<K, V> node)
+            {
+                for (; Objects.nonNull(node); node = node.left)
+                {
+                    path.push(node);
+                }
+            }
+        };
+    }
+
+    private static <K extends Comparable<K>, V> Node<K, V> put(Node<K, V> node, K key, V value)
+    {
+        if (Objects.isNull(node)) { return new Node<>(key, value, null, null); }
+
+        var comparison = key.compareTo(node.key);
+        if (comparison < 0) { return balance(node.key, node.value, put(node.left, key, value), node.right); }
+        if (comparison > 0) { return balance(node.key, node.value, node.left, put(node.right, key, value)); }
+        return new Node<>(key, value, node.left, node.right);
+    }
+
+    private static <K extends Comparable<K>, V> Node<K, V> remove(Node<K, V> node, K key)
+    {
+        if (Objects.isNull(node)) { return null; }
+
+        var comparison = key.compareTo(node.key);
+        if (comparison < 0)
+        {
+            var left = remove(node.left, key);
+            return (left == node.left) ? node : balance(node.key, node.value, left, node.right);
+        }
+        if (comparison > 0)
+        {
+            var right = remove(node.right, key);
+            return (right == node.right) ? node : balance(node.key, node.value, node.left, right);
+        }
+
+        if (Objects.isNull(node.left)) { return node.right; }
+        if (Objects.isNull(node.right)) { return node.left; }
+
+        var successor = node.right;
+        while (Objects.nonNull(successor.left)) { successor = successor.left; }
+        return balance(successor.key, successor.value, node.left, removeFirst(node.right));
+    }
+
+    private static <K extends Comparable<K>, V> Node<K, V> removeFirst(Node<K, V> node)
+    {
+        if (Objects.isNull(node.left)) { return node.right; }
+        return balance(node.key, node.value, removeFirst(node.left), node.right);
+    }
+
+    /**
+     * Creates a node, rotating it back into balance if its subtrees differ in height by more than one.
+     */
+    private static <K extends Comparable<K>, V> Node<K, V> balance(K key, V value, Node<K, V> left, Node<K, V> right)
+    {
+        if (height(left) > height(right) + 1)
+        {
+            if (height(left.left) >= height(left.right))
+            {
+                return new Node<>(left.key, left.value, left.left, new Node<>(key, value, left.right, right));
+            }
+            return new Node<>(left.right.key, left.right.value, new Node<>(left.key, left.value, left.left, left.right.left),
+                    new Node<>(key, value, left.right.right, right));
+        }
+        if (height(right) > height(left) + 1)
+        {
+            if (height(right.right) >= height(right.left))
+            {
+                return new Node<>(right.key, right.value, new Node<>(key, value, left, right.left), right.right);
+            }
+            return new Node<>(right.left.key, right.left.value, new Node<>(key, value, left, right.left.left),
+                    new Node<>(right.key, right.value, right.left.right, right.right));
+        }
+
+        return new Node<>(key, value, left, right);
+    }
+
+    private static int height(Node<?, ?> node) { return Objects.isNull(node) ? 0 : node.height; }
+
+    private static int size(Node<?, ?> node) { return Objects.isNull(node) ? 0 : node.size; }
+
+    private static final class Node<K, V>
+    {
+        final K key;
+        final V value;
+        final Node<K, V> left;
+        final Node<K, V> right;
+        final int height;
+        final int size;
+
+        Node(K key, V value, Node<K, V> left, Node<K, V> right)
+        {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            height = 1 + Math.max(height(left), height(right));
+            size = 1 + size(left) + size(right);
+        }
+    }
+}
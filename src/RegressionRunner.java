@@ -0,0 +1,223 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * Replays the test cases in-process and compares their output with the expected transcripts.
+ * <p>
+ * A test case is a script of {@code input "..."} lines, as run by {@code test}, and its expected transcript is stored
+ * next to it with the {@code .out} extension. Each case runs in its own {@link Assignment} instance, with the standard
+ * output and error merged into the transcript, and all the cases run in parallel. A case may select the options of
+ * its instance with a {@code # options: --history=ensemble} line.
+ * <ul>
+ *     <li>{@code --cases=DIR} selects the directory of the test cases, {@code cases} by default.</li>
+ *     <li>{@code --ensemble-types=FILE} selects the ensemble types, {@code ensembles.properties} by default.</li>
+ *     <li>{@code --update} records the transcripts as the expected ones instead of comparing them.</li>
+ * </ul>
+ */
+public class RegressionRunner
+{
+    /** The extension of the expected transcripts. */
+    private static final String EXPECTED_EXTENSION = ".out";
+
+    /** Matches an {@code input "..."} line of a test case. */
+    private static final Pattern INPUT = Pattern.compile("^\\s*input\\s+\"((?:[^\"\\\\]|\\\\.)*)\".*$");
+    /** Matches the {@code # options:} line of a test case. */
+    private static final Pattern OPTIONS = Pattern.compile("^#\\s*options:(.*)$");
+
+    private final EnsembleRegistry ensembleRegistry;
+    private final boolean isUpdating;
+
+    RegressionRunner(EnsembleRegistry ensembleRegistry, boolean isUpdating)
+    {
+        this.ensembleRegistry = ensembleRegistry;
+        this.isUpdating = isUpdating;
+    }
+
+    /**
+     * Extracts the console input from a test case.
+     *
+     * @param script The test case.
+     * @return The lines entered, separated by line feeds.
+     */
+    static String parseInput(String script)
+    {
+        var input = new StringBuilder();
+        for (var line : script.split("\\R"))
+        {
+            var matcher = INPUT.matcher(line);
+            if (matcher.matches())
+            {
+                // Unescape the double-quoted string of the shell
+                input.append(matcher.group(1).replaceAll("\\\\([\"\\\\$`])", "$1")).append('\n');
+            }
+        }
+
+        return input.toString();
+    }
+
+    /**
+     * Extracts the options of the instance from a test case.
+     *
+     * @param script The test case.
+     * @return The options.
+     * @throws IllegalArgumentException If an option is malformed or unknown.
+     */
+    static Options parseOptions(String script)
+    {
+        for (var line : script.split("\\R"))
+        {
+            var matcher = OPTIONS.matcher(line);
+            if (matcher.matches())
+            {
+                var args = matcher.group(1).trim();
+                return Options.parse(args.isEmpty() ? new String[0] : args.split("\\s+"), "history");
+            }
+        }
+
+        return Options.parse(new String[0]);
+    }
+
+    /**
+     * Runs the console input through a fresh instance of the system.
+     *
+     * @param options The options of the instance.
+     * @param input   The console input.
+     * @return The transcript of the standard output and error.
+     */
+    String transcribe(Options options, String input)
+    {
+        var transcript = new ByteArrayOutputStream();
+        var console = new ConsoleWriter(transcript, true);
+        var histories = new Histories(options.get("history", "global").equals("ensemble"));
+        new Assignment(new MemoryEnsembleStore(), ensembleRegistry, histories, new ConsoleReader(input), console, console).run();
+
+        return transcript.toString(StandardCharsets.UTF_8).replace(System.lineSeparator(), "\n");
+    }
+
+    /**
+     * Runs a test case.
+     *
+     * @param path The test case.
+     * @return {@code null} if it passed, otherwise a description of the failure.
+     */
+    String run(Path path) throws IOException
+    {
+        var script = Files.readString(path);
+        var actual = transcribe(parseOptions(script), parseInput(script));
+        var expectedPath = path.resolveSibling(path.getFileName() + EXPECTED_EXTENSION);
+        if (isUpdating)
+        {
+            Files.writeString(expectedPath, actual);
+            return null;
+        }
+        if (!Files.exists(expectedPath))
+        {
+            return "No expected transcript.";
+        }
+
+        var expected = Files.readString(expectedPath).replace("\r\n", "\n");
+        if (expected.equals(actual)) { return null; }
+
+        var expectedLines = expected.split("\n", -1);
+        var actualLines = actual.split("\n", -1);
+        var line = 0;
+        while ((line < expectedLines.length) && (line < actualLines.length) && expectedLines[line].equals(actualLines[line]))
+        {
+            line++;
+        }
+
+        return String.format("Line %d differs.%n  expected: %s%n  actual:   %s", line + 1,
+                (line < expectedLines.length) ? expectedLines[line] : "<end of transcript>",
+                (line < actualLines.length) ? actualLines[line] : "<end of transcript>");
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        Options options = null;
+        try
+        {
+            options = Options.parse(args, "cases", "ensemble-types", "update");
+        }
+        catch (IllegalArgumentException ex)
+        {
+            System.err.println(ex.getMessage());
+            System.exit(1);
+        }
+
+        EnsembleRegistry ensembleRegistry = null;
+        var registryPath = Path.of(options.get("ensemble-types", "ensembles.properties"));
+        try
+        {
+            ensembleRegistry = EnsembleRegistry.load(registryPath);
+        }
+        catch (IOException | IllegalArgumentException ex)
+        {
+            System.err.printf("Failed to load the ensemble types from %s: %s%n", registryPath, ex.getMessage());
+            System.exit(1);
+        }
+
+        var cases = new ArrayList<Path>();
+        try (var paths = Files.list(Path.of(options.get("cases", "cases"))))
+        {
+            paths.filter(path -> Files.isRegularFile(path) && !path.toString().endsWith(EXPECTED_EXTENSION))
+                    .sorted()
+                    .forEach(cases::add);
+        }
+
+        var runner = new RegressionRunner(ensembleRegistry, options.has("update"));
+        var startTime = System.nanoTime();
+        List<Future<String>> results;
+        try (var executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()))
+        {
+            var tasks = new ArrayList<Callable<String>>();
+            for (var path : cases)
+            {
+                tasks.add(() -> runner.run(path));
+            }
+            results = executor.invokeAll(tasks);
+        }
+        var elapsed = (System.nanoTime() - startTime) / 1_000_000;
+
+        var failures = 0;
+        for (var i = 0; i < cases.size(); i++)
+        {
+            String failure;
+            try
+            {
+                failure = results.get(i).get();
+            }
+            catch (ExecutionException ex)
+            {
+                failure = String.format("Crashed: %s", ex.getCause());
+            }
+
+            if (Objects.nonNull(failure))
+            {
+                failures++;
+                System.out.printf("FAIL %s%n%s%n", cases.get(i), failure.indent(2).stripTrailing());
+            }
+        }
+
+        if (options.has("update"))
+        {
+            System.out.printf("%d transcript(s) are recorded in %d ms.%n", cases.size(), elapsed);
+        }
+        else
+        {
+            System.out.printf("%d case(s) passed, %d failed in %d ms.%n", cases.size() - failures, failures, elapsed);
+        }
+        System.exit((failures > 0) ? 1 : 0);
+    }
+}
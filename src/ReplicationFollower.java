@@ -0,0 +1,259 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps a read-only copy of the ensembles of a {@link ReplicationLeader}, applying its commits in order on a thread of
+ * its own, and reconnecting for a fresh snapshot whenever the connection is lost.
+ * <p>
+ * All the changes of a commit are received before any is applied, and then applied in place together under a lock,
+ * which the console holds while running a command, so that a command never sees a commit half applied. The changes are
+ * applied idempotently, skipping a change already included.
+ */
+class ReplicationFollower
+{
+    /** The delay before reconnecting to the leader. */
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    private final String host;
+    private final int port;
+    private final EnsembleRegistry ensembleRegistry;
+    private final ReplicaEnsembleStore ensembleStore = new ReplicaEnsembleStore();
+    private final CountDownLatch firstSnapshot = new CountDownLatch(1);
+    /** Held while a commit or a snapshot is applied. */
+    private final Lock lock = new ReentrantLock();
+
+    private volatile boolean isConnected = false;
+    /** The sequence number of the latest commit applied. */
+    private volatile long appliedSequence = 0;
+    /** The sequence number of the latest commit made by the leader, as far as known. */
+    private volatile long leaderSequence = 0;
+    /** The milliseconds from the latest commit applied being made by the leader to being applied here. */
+    private volatile long applyLagMillis = 0;
+    /** The number of snapshots received, the first one included. */
+    private volatile int snapshotCount = 0;
+
+    /**
+     * @param address The address of the leader, in the form of {@code host:port}.
+     * @throws IllegalArgumentException If the address is malformed.
+     */
+    ReplicationFollower(String address, EnsembleRegistry ensembleRegistry)
+    {
+        var separator = address.lastIndexOf(':');
+        if (separator <= 0)
+        {
+            throw new IllegalArgumentException(String.format("Malformed leader address: %s", address));
+        }
+
+        host = address.substring(0, separator);
+        port = Integer.parseInt(address.substring(separator + 1));
+        this.ensembleRegistry = ensembleRegistry;
+    }
+
+    /** The read-only copy of the ensembles. */
+    EnsembleStore getEnsembleStore() { return ensembleStore; }
+
+    /** The lock held while applying the changes from the leader, to be held while reading the ensembles. */
+    Lock getLock() { return lock; }
+
+    /**
+     * Starts following the leader.
+     *
+     * @param timeoutMillis The milliseconds to wait for the first snapshot.
+     * @return Whether the first snapshot was received in time.
+     */
+    boolean start(long timeoutMillis) throws InterruptedException
+    {
+        var thread = new Thread(this::follow, "replication-follower");
+        thread.setDaemon(true);
+        thread.start();
+        return firstSnapshot.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void follow()
+    {
+        while (true)
+        {
+            try (var socket = new Socket())
+            {
+                socket.connect(new InetSocketAddress(host, port));
+                isConnected = true;
+                receive(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+            }
+            catch (IOException | RuntimeException ex)
+            {
+                // Lost the leader, or received something unexpected; a fresh snapshot follows the reconnection
+            }
+
+            isConnected = false;
+            try
+            {
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+            }
+            catch (InterruptedException ex)
+            {
+                return;
+            }
+        }
+    }
+
+    private void receive(DataInputStream input) throws IOException
+    {
+        while (true)
+        {
+            var type = input.readByte();
+            switch (type)
+            {
+                case ReplicationLeader.SNAPSHOT ->
+                {
+                    var sequence = input.readLong();
+                    var count = input.readInt();
+                    var ensembles = new HashMap<String, Ensemble>(count * 2);
+                    for (var i = 0; i < count; i++)
+                    {
+                        var ensemble = EnsembleCodec.read(input, ensembleRegistry);
+                        ensembles.put(ensemble.getEnsembleID(), ensemble);
+                    }
+
+                    lock.lock();
+                    try
+                    {
+                        ensembleStore.replaceAll(ensembles);
+                    }
+                    finally
+                    {
+                        lock.unlock();
+                    }
+                    appliedSequence = sequence;
+                    leaderSequence = Math.max(leaderSequence, sequence);
+                    snapshotCount++;
+                    firstSnapshot.countDown();
+                }
+                case ReplicationLeader.COMMIT ->
+                {
+                    var sequence = input.readLong();
+                    var timestamp = input.readLong();
+                    var count = input.readInt();
+                    var changes = new ArrayList<Change>(count);
+                    for (var i = 0; i < count; i++) { changes.add(Change.decode(input.readUTF())); }
+
+                    lock.lock();
+                    try
+                    {
+                        for (var change : changes) { apply(change); }
+                    }
+                    finally
+                    {
+                        lock.unlock();
+                    }
+                    appliedSequence = sequence;
+                    leaderSequence = Math.max(leaderSequence, sequence);
+                    applyLagMillis = System.currentTimeMillis() - timestamp;
+                }
+                case ReplicationLeader.HEARTBEAT ->
+                {
+                    leaderSequence = input.readLong();
+                    input.readLong();
+                }
+                default -> throw new IOException(String.format("Invalid message type: %d", type));
+            }
+        }
+    }
+
+    /**
+     * Applies a change in place, skipping it if already included. Must be called with the lock held.
+     */
+    private void apply(Change change)
+    {
+        var ensemble = ensembleStore.get(change.ensembleId());
+        switch (change.kind())
+        {
+            case CREATE_ENSEMBLE ->
+            {
+                if (Objects.isNull(ensemble)) { change.apply(ensembleStore, ensembleRegistry); }
+                return;
+            }
+            case REMOVE_ENSEMBLE ->
+            {
+                ensembleStore.remove(change.ensembleId());
+                return;
+            }
+            default -> {}
+        }
+
+        if (Objects.isNull(ensemble)) { return; }
+        var hasMusician = false;
+        for (var musician : ensemble.readMusicians())
+        {
+            if (Objects.equals(musician.getMID(), change.subject())) { hasMusician = true; }
+        }
+        if (change.kind() == Change.Kind.ADD_MUSICIAN ? hasMusician
+                : (change.kind() != Change.Kind.RENAME_ENSEMBLE && !hasMusician))
+        {
+            return;
+        }
+
+        change.apply(ensembleStore, ensembleRegistry);
+    }
+
+    /**
+     * Describes the replication lag, e.g. {@code "3 commit(s) behind localhost:9200, the latest applied 2 ms after
+     * made."}.
+     */
+    String getStatus()
+    {
+        var address = host + ":" + port;
+        if (!isConnected)
+        {
+            return String.format("Not connected to the leader at %s, reconnecting.", address);
+        }
+
+        return String.format("%d commit(s) behind the leader at %s, the latest applied %d ms after made (%d snapshot(s)).",
+                Math.max(0, leaderSequence - appliedSequence), address, applyLagMillis, snapshotCount);
+    }
+
+    /**
+     * The read-only copy of the ensembles, replaced as a whole by the snapshots.
+     */
+    private static class ReplicaEnsembleStore implements EnsembleStore
+    {
+        private volatile Map<String, Ensemble> ensembleMap = new ConcurrentHashMap<>();
+
+        void replaceAll(Map<String, Ensemble> ensembles)
+        {
+            ensembleMap = new ConcurrentHashMap<>(ensembles);
+        }
+
+        @Override
+        public Ensemble get(String ensembleId) { return ensembleMap.get(ensembleId); }
+
+        @Override
+        public boolean contains(String ensembleId) { return ensembleMap.containsKey(ensembleId); }
+
+        @Override
+        public void put(Ensemble ensemble) { ensembleMap.put(ensemble.getEnsembleID(), ensemble); }
+
+        @Override
+        public void remove(String ensembleId) { ensembleMap.remove(ensembleId); }
+
+        @Override
+        public boolean isEmpty() { return ensembleMap.isEmpty(); }
+
+        @Override
+        public int size() { return ensembleMap.size(); }
+
+        @Override
+        public Iterable<Ensemble> values() { return ensembleMap.values(); }
+    }
+}
@@ -0,0 +1,244 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Ships the changes made by the commands to the {@link ReplicationFollower}s connected over TCP.
+ * <p>
+ * The changes made by an execute, undo or redo are held until the command commits, and then stamped together with a
+ * sequence number and the timestamp of the commit, and queued for every follower as one unit, so that a follower never
+ * applies half a command, e.g. a musician dropped from one ensemble but not yet added to the other. A follower first
+ * receives a snapshot of all the ensembles, and then the commits after it in order, with a heartbeat whenever there is
+ * no commit for a while. The snapshot is encoded under the command lock, so that it is exactly the state as of its
+ * sequence number, and sent once the lock is released, so that the commands only wait for the encoding and not for the
+ * follower. A follower falling so far behind that its queue overflows is caught up with a fresh snapshot, so a slow
+ * follower never stalls the commands.
+ * <p>
+ * Messages are a type byte followed by: for a snapshot, its sequence number, the ensemble count and the ensembles in the
+ * form of {@link EnsembleCodec}; for a commit, its sequence number, timestamp, the change count and each change in the
+ * form of {@link Change#encode()}; for a heartbeat, the latest sequence number and the current time.
+ */
+class ReplicationLeader implements ChangeListener
+{
+    static final byte SNAPSHOT = 1;
+    static final byte COMMIT = 2;
+    static final byte HEARTBEAT = 3;
+
+    /** The number of commits queued for a follower before it is caught up with a snapshot instead. */
+    private static final int QUEUE_CAPACITY = 10_000;
+    /** The interval of the heartbeats while there is no change. */
+    private static final long HEARTBEAT_INTERVAL_MILLIS = 1000;
+
+    private final EnsembleStore ensembleStore;
+    /** The lock held by the commands, the ones publishing the changes. */
+    private final Lock commandLock;
+    private final List<Follower> followers = new CopyOnWriteArrayList<>();
+
+    /** The sequence number of the latest commit, guarded by this. */
+    private long sequence = 0;
+    /** The changes of the command running, encoded, guarded by this. */
+    private final List<String> pendingChanges = new ArrayList<>();
+
+    /**
+     * @param ensembleStore The store of the ensembles.
+     * @param commandLock   The lock held by the commands changing the ensembles.
+     */
+    ReplicationLeader(EnsembleStore ensembleStore, Lock commandLock)
+    {
+        this.ensembleStore = ensembleStore;
+        this.commandLock = commandLock;
+    }
+
+    /**
+     * Starts accepting followers.
+     *
+     * @param port The port to listen on, {@code 0} for any free port.
+     * @return The port listened on.
+     * @throws IOException If the port cannot be bound.
+     */
+    int start(int port) throws IOException
+    {
+        var serverSocket = new ServerSocket(port);
+        var thread = new Thread(() ->
+        {
+            while (true)
+            {
+                try
+                {
+                    var socket = serverSocket.accept();
+                    socket.setTcpNoDelay(true);
+                    var follower = new Follower(socket);
+                    followers.add(follower);
+                    Thread.ofVirtual().start(follower::ship);
+                }
+                catch (IOException ex)
+                {
+                    System.err.printf("Failed to accept a follower: %s%n", ex.getMessage());
+                }
+            }
+        }, "replication-acceptor");
+        thread.setDaemon(true);
+        thread.start();
+
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public synchronized void changed(Change change)
+    {
+        pendingChanges.add(change.encode());
+    }
+
+    /**
+     * Queues the changes of the command for every follower, as one unit.
+     */
+    @Override
+    public synchronized void committed(long timestamp)
+    {
+        if (pendingChanges.isEmpty()) { return; }
+
+        var entry = new Entry(++sequence, timestamp, List.copyOf(pendingChanges));
+        pendingChanges.clear();
+        for (var follower : followers)
+        {
+            follower.offer(entry);
+        }
+    }
+
+    private synchronized long getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * The changes of a commit, stamped for shipping.
+     */
+    private record Entry(long sequence, long timestamp, List<String> changes) {}
+
+    /**
+     * A connected follower, with its own queue and shipping thread.
+     */
+    private final class Follower
+    {
+        private final Socket socket;
+        private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        /** Whether the follower is to be caught up with a snapshot, guarded by the leader. */
+        private boolean isBehind = true;
+
+        Follower(Socket socket)
+        {
+            this.socket = socket;
+        }
+
+        /**
+         * Queues a commit, dropping the queue for a snapshot if it is full. Must be called with the leader locked.
+         */
+        void offer(Entry entry)
+        {
+            if (!isBehind && !queue.offer(entry))
+            {
+                isBehind = true;
+                queue.clear();
+            }
+        }
+
+        void ship()
+        {
+            try (socket; var output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())))
+            {
+                var snapshotSequence = -1L;
+                while (true)
+                {
+                    if (isBehind())
+                    {
+                        var snapshot = takeSnapshot();
+                        snapshotSequence = snapshot.sequence();
+                        snapshot.bytes().writeTo(output);
+                        output.flush();
+                    }
+
+                    var entry = queue.poll(HEARTBEAT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (Objects.isNull(entry))
+                    {
+                        output.writeByte(HEARTBEAT);
+                        output.writeLong(getSequence());
+                        output.writeLong(System.currentTimeMillis());
+                        output.flush();
+                    }
+                    else if (entry.sequence() > snapshotSequence)
+                    {
+                        output.writeByte(COMMIT);
+                        output.writeLong(entry.sequence());
+                        output.writeLong(entry.timestamp());
+                        output.writeInt(entry.changes().size());
+                        for (var change : entry.changes()) { output.writeUTF(change); }
+                        // Send the commits in batches while they keep coming
+                        if (queue.isEmpty()) { output.flush(); }
+                    }
+                }
+            }
+            catch (IOException | InterruptedException ex)
+            {
+                // The follower is gone
+            }
+            finally
+            {
+                followers.remove(this);
+            }
+        }
+
+        private boolean isBehind()
+        {
+            synchronized (ReplicationLeader.this)
+            {
+                return isBehind;
+            }
+        }
+
+        /**
+         * Encodes the snapshot message of all the ensembles, with no command running meanwhile.
+         */
+        private Snapshot takeSnapshot() throws IOException
+        {
+            var bytes = new ByteArrayOutputStream();
+            var output = new DataOutputStream(bytes);
+            commandLock.lock();
+            try
+            {
+                long snapshotSequence;
+                synchronized (ReplicationLeader.this)
+                {
+                    snapshotSequence = sequence;
+                    queue.clear();
+                    isBehind = false;
+                }
+
+                output.writeByte(SNAPSHOT);
+                output.writeLong(snapshotSequence);
+                output.writeInt(ensembleStore.size());
+                for (var ensemble : ensembleStore.values()) { EnsembleCodec.write(output, ensemble); }
+                return new Snapshot(snapshotSequence, bytes);
+            }
+            finally
+            {
+                commandLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * A snapshot message encoded, to be sent without the command lock.
+     */
+    private record Snapshot(long sequence, ByteArrayOutputStream bytes) {}
+}
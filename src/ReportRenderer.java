@@ -0,0 +1,104 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.Serial;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Renders the {@link Ensemble#showEnsemble(PrintStream)} output of many ensembles in parallel on a fork-join pool.
+ * <p>
+ * The ensembles are taken from their iteration a batch at a time, so that only a batch of them is held at once. Each
+ * ensemble is rendered into its own buffer, and the buffers are written out in the order of the ensembles, so the
+ * output is identical to rendering them one by one.
+ */
+class ReportRenderer
+{
+    /** The number of ensembles rendered by a single task without further splitting. */
+    private static final int THRESHOLD = 16;
+    /** The number of ensembles taken from the iteration and rendered at once. */
+    private static final int BATCH_SIZE = 1024;
+
+    private final ForkJoinPool pool;
+
+    ReportRenderer(ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+
+    /**
+     * Renders the ensembles, separated by an empty line.
+     *
+     * @param ensembles The ensembles, in the order to be written.
+     * @param out       The stream to write to.
+     */
+    void render(Iterable<Ensemble> ensembles, PrintStream out)
+    {
+        var batch = new ArrayList<Ensemble>(BATCH_SIZE);
+        var isFirst = true;
+        var iterator = ensembles.iterator();
+        while (iterator.hasNext())
+        {
+            batch.clear();
+            while (iterator.hasNext() && (batch.size() < BATCH_SIZE)) { batch.add(iterator.next()); }
+
+            var buffers = new byte[batch.size()][];
+            pool.invoke(new RenderTask(batch, out.charset(), buffers, 0, batch.size()));
+            for (var buffer : buffers)
+            {
+                if (!isFirst) { out.println(); }
+                out.write(buffer, 0, buffer.length);
+                isFirst = false;
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Renders a range of the batch, never serialized, as tasks only run within the pool.
+     */
+    private static final class RenderTask extends RecursiveAction
+    {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<Ensemble> ensembles;
+        private final transient Charset charset;
+        private final byte[][] buffers;
+        private final int from;
+        private final int to;
+
+        RenderTask(List<Ensemble> ensembles, Charset charset, byte[][] buffers, int from, int to)
+        {
+            this.ensembles = ensembles;
+            this.charset = charset;
+            this.buffers = buffers;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from > THRESHOLD)
+            {
+                var middle = (from + to) >>> 1;
+                invokeAll(new RenderTask(ensembles, charset, buffers, from, middle),
+                        new RenderTask(ensembles, charset, buffers, middle, to));
+                return;
+            }
+
+            var buffer = new ByteArrayOutputStream();
+            var out = new PrintStream(buffer, false, charset);
+            for (var i = from; i < to; i++)
+            {
+                ensembles.get(i).showEnsemble(out);
+                out.flush();
+                buffers[i] = buffer.toByteArray();
+                buffer.reset();
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the throughput of the changes to ensembles spread across local shard workers, made through a single router
+ * as the console does, each command committing a number of changes.
+ * <p>
+ * Usage: {@code java ShardBenchmark [shard count] [changes per command] [seconds]}, compare the results of the shard
+ * counts on a machine with at least as many cores.
+ */
+class ShardBenchmark
+{
+    private static final int ENSEMBLE_COUNT = 800;
+
+    public static void main(String[] args) throws IOException
+    {
+        var shardCount = (args.length > 0) ? args[0] : "2";
+        var changesPerCommand = (args.length > 1) ? Integer.parseInt(args[1]) : 1;
+        var seconds = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+
+        var type = new EnsembleType("o", "orchestra", "OrchestraEnsemble", "Orchestra Ensemble",
+                List.of(new EnsembleType.Role(1, "violinist"), new EnsembleType.Role(2, "cellist")));
+        var ensembleRegistry = new EnsembleRegistry(List.of(type));
+        try (var store = ShardedEnsembleStore.open(shardCount, ensembleRegistry, List.of()))
+        {
+            var ensembles = new ArrayList<Ensemble>();
+            for (var i = 0; i < ENSEMBLE_COUNT; i++)
+            {
+                var ensemble = new Ensemble(String.format("E%03d", i), type);
+                ensemble.setName("Ensemble " + i);
+                store.put(ensemble);
+                ensembles.add(ensemble);
+            }
+
+            // Adds and drops a musician in each ensemble in turn until the deadline
+            var musician = new Musician("M001");
+            musician.setName("Musician");
+            musician.setRole(1);
+            var start = System.nanoTime();
+            var deadline = start + seconds * 1_000_000_000L;
+            var count = 0L;
+            for (var i = 0; System.nanoTime() < deadline; i++)
+            {
+                var ensemble = ensembles.get(i % ENSEMBLE_COUNT);
+                store.changed(((i / ENSEMBLE_COUNT) % 2 == 0) ? Change.addMusician(ensemble, musician) :
+                        Change.dropMusician(ensemble, musician));
+                if (++count % changesPerCommand == 0) { store.committed(System.currentTimeMillis()); }
+            }
+            // All the changes are applied by the shards once counted
+            store.size();
+            var time = System.nanoTime() - start;
+
+            System.out.printf("%d shard(s), %d change(s) per command: %,.0f changes/s%n", store.getShardCount(),
+                    changesPerCommand, count / (time / 1e9));
+        }
+    }
+}
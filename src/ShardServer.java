@@ -0,0 +1,217 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Objects;
+
+/**
+ * Serves the ensembles of one shard to the {@link ShardedEnsembleStore} of the routers, over a binary protocol of
+ * request/response pairs on TCP connections.
+ * <p>
+ * Each request is an operation code followed by its arguments. Each response is a success flag followed by the result,
+ * or by an error message if it failed. Ensembles are sent in the form of {@link EnsembleCodec} and changes in the form
+ * of {@link Change#encode()}. A router may send several requests before reading their responses, which come in the
+ * same order. Every connection is served on its own virtual thread, while the operations on the store run one at a
+ * time, as the stores are not thread-safe. With a single router this costs nothing, its requests to a shard coming one
+ * connection at a time anyway.
+ */
+class ShardServer
+{
+    /** Gets an ensemble by its ID, responding whether it exists and the ensemble if it does. */
+    static final byte GET = 1;
+    /** Checks whether an ensemble exists by its ID. */
+    static final byte CONTAINS = 2;
+    /** Stores an ensemble. */
+    static final byte PUT = 3;
+    /** Removes an ensemble by its ID. */
+    static final byte REMOVE = 4;
+    /** Applies a change to an ensemble. */
+    static final byte CHANGE = 5;
+    /** Gets all the ensembles, responding with their count followed by the ensembles. */
+    static final byte VALUES = 6;
+    /** Counts the ensembles. */
+    static final byte COUNT = 7;
+    /** Gets the summaries of all the ensembles, responding with their count followed by the ID, type and name of each. */
+    static final byte SUMMARIES = 8;
+    /** Commits the operations of a command with its timestamp, for a store keeping commit boundaries. */
+    static final byte COMMIT = 9;
+
+    private final EnsembleStore ensembleStore;
+    private final EnsembleRegistry ensembleRegistry;
+
+    ShardServer(EnsembleStore ensembleStore, EnsembleRegistry ensembleRegistry)
+    {
+        this.ensembleStore = ensembleStore;
+        this.ensembleRegistry = ensembleRegistry;
+    }
+
+    /**
+     * Starts serving the shard.
+     *
+     * @param port The port to listen on, {@code 0} for any free port.
+     * @return The port listened on.
+     * @throws IOException If the port cannot be bound.
+     */
+    int start(int port) throws IOException
+    {
+        var serverSocket = new ServerSocket(port);
+        var thread = new Thread(() ->
+        {
+            while (true)
+            {
+                try
+                {
+                    var socket = serverSocket.accept();
+                    socket.setTcpNoDelay(true);
+                    Thread.ofVirtual().start(() -> serve(socket));
+                }
+                catch (IOException ex)
+                {
+                    System.err.printf("Failed to accept a connection: %s%n", ex.getMessage());
+                }
+            }
+        }, "shard-acceptor");
+        thread.start();
+
+        return serverSocket.getLocalPort();
+    }
+
+    private void serve(Socket socket)
+    {
+        try (socket;
+             var input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             var output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())))
+        {
+            int operation;
+            while ((operation = input.read()) >= 0)
+            {
+                handle(operation, input, output);
+                // The responses to the requests pipelined by the router are sent together
+                if (input.available() == 0) { output.flush(); }
+            }
+        }
+        catch (IOException ex)
+        {
+            // The router is gone
+        }
+    }
+
+    private void handle(int operation, DataInputStream input, DataOutputStream output) throws IOException
+    {
+        switch (operation)
+        {
+            case GET ->
+            {
+                var ensembleId = input.readUTF();
+                synchronized (ensembleStore)
+                {
+                    var ensemble = ensembleStore.get(ensembleId);
+                    output.writeBoolean(true);
+                    output.writeBoolean(Objects.nonNull(ensemble));
+                    if (Objects.nonNull(ensemble)) { EnsembleCodec.write(output, ensemble); }
+                }
+            }
+            case CONTAINS ->
+            {
+                var ensembleId = input.readUTF();
+                synchronized (ensembleStore)
+                {
+                    output.writeBoolean(true);
+                    output.writeBoolean(ensembleStore.contains(ensembleId));
+                }
+            }
+            case PUT ->
+            {
+                var ensemble = EnsembleCodec.read(input, ensembleRegistry);
+                synchronized (ensembleStore)
+                {
+                    ensembleStore.put(ensemble);
+                }
+                output.writeBoolean(true);
+            }
+            case REMOVE ->
+            {
+                var ensembleId = input.readUTF();
+                synchronized (ensembleStore)
+                {
+                    ensembleStore.remove(ensembleId);
+                }
+                output.writeBoolean(true);
+            }
+            case CHANGE ->
+            {
+                var change = Change.decode(input.readUTF());
+                try
+                {
+                    synchronized (ensembleStore)
+                    {
+                        change.apply(ensembleStore, ensembleRegistry);
+                    }
+                    output.writeBoolean(true);
+                }
+                catch (RuntimeException ex)
+                {
+                    output.writeBoolean(false);
+                    output.writeUTF(String.format("Failed to apply the change to ensemble %s: %s", change.ensembleId(), ex));
+                }
+            }
+            case VALUES ->
+            {
+                synchronized (ensembleStore)
+                {
+                    var ensembles = new ArrayList<Ensemble>();
+                    for (var ensemble : ensembleStore.values()) { ensembles.add(ensemble); }
+
+                    output.writeBoolean(true);
+                    output.writeInt(ensembles.size());
+                    for (var ensemble : ensembles) { EnsembleCodec.write(output, ensemble); }
+                }
+            }
+            case COUNT ->
+            {
+                synchronized (ensembleStore)
+                {
+                    output.writeBoolean(true);
+                    output.writeInt(ensembleStore.size());
+                }
+            }
+            case SUMMARIES ->
+            {
+                synchronized (ensembleStore)
+                {
+                    output.writeBoolean(true);
+                    output.writeInt(ensembleStore.size());
+                    for (var summary : ensembleStore.summaries())
+                    {
+                        output.writeUTF(summary.getEnsembleID());
+                        output.writeUTF(summary.getType().getKey());
+                        output.writeUTF(summary.getName());
+                    }
+                }
+            }
+            case COMMIT ->
+            {
+                var timestamp = input.readLong();
+                try
+                {
+                    synchronized (ensembleStore)
+                    {
+                        ensembleStore.committed(timestamp);
+                    }
+                    output.writeBoolean(true);
+                }
+                catch (UncheckedIOException ex)
+                {
+                    output.writeBoolean(false);
+                    output.writeUTF(String.format("Failed to commit: %s", ex.getMessage()));
+                }
+            }
+            default -> throw new IOException(String.format("Invalid operation: %d", operation));
+        }
+    }
+}
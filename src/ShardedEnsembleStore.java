@@ -0,0 +1,632 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * A store partitioning the ensembles by the hash of their IDs across several shards, each served by a MEMS worker
+ * process with a {@link ShardServer}. This process acts as the router: each operation on an ensemble is forwarded to
+ * the shard owning it, while the operations on all the ensembles are scattered to all the shards in parallel and their
+ * results gathered. Listing or counting the ensembles only fetches their summaries or counts.
+ * <p>
+ * Every change must be published to {@link #changed(Change)} to reach the shard, as the commands do. The changes of a
+ * command are pipelined rather than waited for one by one, and their responses are read by {@link #committed(long)},
+ * which reports the first change the shards failed to apply. An ensemble still referenced in this process, e.g. by a
+ * command in the undo stack, is tracked weakly, so that the same instance is returned until it is no longer referenced.
+ * This assumes a single router changing the ensembles.
+ * <p>
+ * Sharding spreads the ensembles and their memory across the workers, not the commands: they all still run in this
+ * process one at a time under the command lock, so the throughput of the commands does not grow with the shards.
+ */
+class ShardedEnsembleStore implements EnsembleStore
+{
+    /** Matches the line printed by a worker once it is listening. */
+    private static final Pattern LISTENING = Pattern.compile("MEMS shard is listening on port (\\d+)\\.");
+    /** The number of changes sent to a shard without reading their responses. */
+    private static final int MAX_PENDING_CHANGES = 1024;
+
+    private final EnsembleRegistry ensembleRegistry;
+    private final List<Shard> shards = new ArrayList<>();
+    /** The worker processes started by this store. */
+    private final List<Process> workers = new ArrayList<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Map<String, EnsembleReference> references = new HashMap<>();
+    private final ReferenceQueue<Ensemble> referenceQueue = new ReferenceQueue<>();
+
+    private ShardedEnsembleStore(EnsembleRegistry ensembleRegistry)
+    {
+        this.ensembleRegistry = ensembleRegistry;
+    }
+
+    /**
+     * Connects to the shards.
+     *
+     * @param shards           Either the number of local worker processes to start, or the comma-separated
+     *                         {@code host:port} addresses of the running workers.
+     * @param ensembleRegistry The registry of the ensemble types.
+     * @param workerArgs       The arguments of the local worker processes.
+     * @throws IOException If a shard cannot be started or connected.
+     */
+    static ShardedEnsembleStore open(String shards, EnsembleRegistry ensembleRegistry, List<String> workerArgs)
+            throws IOException
+    {
+        var store = new ShardedEnsembleStore(ensembleRegistry);
+        try
+        {
+            if (shards.chars().allMatch(Character::isDigit))
+            {
+                var count = Integer.parseInt(shards);
+                if (count < 1) { throw new IllegalArgumentException("Shard count must be positive"); }
+                for (var i = 0; i < count; i++)
+                {
+                    store.shards.add(store.new Shard("localhost", store.startWorker(workerArgs)));
+                }
+            }
+            else
+            {
+                for (var address : shards.split(","))
+                {
+                    var separator = address.lastIndexOf(':');
+                    if (separator < 0) { throw new IllegalArgumentException(String.format("Invalid shard: %s", address)); }
+                    store.shards.add(store.new Shard(address.substring(0, separator).trim(),
+                            Integer.parseInt(address.substring(separator + 1).trim())));
+                }
+            }
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            store.close();
+            throw ex;
+        }
+
+        return store;
+    }
+
+    int getShardCount() { return shards.size(); }
+
+    /**
+     * Gets the addresses of the shards, for other routers to connect to them.
+     *
+     * @return The comma-separated {@code host:port} addresses.
+     */
+    String getAddresses()
+    {
+        var addresses = new ArrayList<String>();
+        for (var shard : shards) { addresses.add(shard.address); }
+        return String.join(",", addresses);
+    }
+
+    @Override
+    public Ensemble get(String ensembleId)
+    {
+        var ensemble = getInstance(ensembleId);
+        if (Objects.nonNull(ensemble)) { return ensemble; }
+
+        ensemble = shardOf(ensembleId).get(ensembleId);
+        return Objects.nonNull(ensemble) ? track(ensemble) : null;
+    }
+
+    @Override
+    public boolean contains(String ensembleId)
+    {
+        return shardOf(ensembleId).contains(ensembleId);
+    }
+
+    @Override
+    public void put(Ensemble ensemble)
+    {
+        shardOf(ensemble.getEnsembleID()).put(ensemble);
+        track(ensemble);
+    }
+
+    @Override
+    public void remove(String ensembleId)
+    {
+        shardOf(ensembleId).remove(ensembleId);
+        synchronized (references)
+        {
+            references.remove(ensembleId);
+        }
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    @Override
+    public int size()
+    {
+        var size = 0;
+        for (var count : scatter(Shard::count)) { size += count; }
+        return size;
+    }
+
+    @Override
+    public Iterable<Ensemble> values()
+    {
+        var ensembles = new ArrayList<Ensemble>();
+        for (var shardEnsembles : scatter(Shard::values))
+        {
+            for (var ensemble : shardEnsembles)
+            {
+                var instance = getInstance(ensemble.getEnsembleID());
+                ensembles.add(Objects.nonNull(instance) ? instance : track(ensemble));
+            }
+        }
+        return ensembles;
+    }
+
+    @Override
+    public Iterable<? extends EnsembleSummary> summaries()
+    {
+        var summaries = new ArrayList<Summary>();
+        for (var shardSummaries : scatter(Shard::summaries)) { summaries.addAll(shardSummaries); }
+        return summaries;
+    }
+
+    @Override
+    public void changed(Change change)
+    {
+        // Creations and removals are already stored by put() and remove()
+        if ((change.kind() == Change.Kind.CREATE_ENSEMBLE) || (change.kind() == Change.Kind.REMOVE_ENSEMBLE)) { return; }
+
+        shardOf(change.ensembleId()).change(change);
+    }
+
+    /**
+     * Sends the changes of the command to the shards along with their commit, then waits for their responses.
+     *
+     * @throws UncheckedIOException If a shard failed to apply a change of the command or is unavailable.
+     */
+    @Override
+    public void committed(long timestamp)
+    {
+        // All the commits are sent before any response is read, so that the shards apply them in parallel
+        for (var shard : shards) { shard.commit(timestamp); }
+
+        UncheckedIOException failure = null;
+        for (var shard : shards)
+        {
+            try
+            {
+                shard.awaitCommit();
+            }
+            catch (UncheckedIOException ex)
+            {
+                if (Objects.isNull(failure)) { failure = ex; }
+            }
+        }
+        if (Objects.nonNull(failure)) { throw failure; }
+    }
+
+    @Override
+    public void close()
+    {
+        executor.shutdownNow();
+        for (var shard : shards) { shard.close(); }
+        for (var worker : workers) { worker.destroy(); }
+    }
+
+    /**
+     * Gets the instance of an ensemble still referenced in this process.
+     *
+     * @return The instance, or {@code null} if there is none.
+     */
+    private Ensemble getInstance(String ensembleId)
+    {
+        synchronized (references)
+        {
+            purgeReferences();
+            var reference = references.get(ensembleId);
+            return Objects.nonNull(reference) ? reference.get() : null;
+        }
+    }
+
+    private Ensemble track(Ensemble ensemble)
+    {
+        synchronized (references)
+        {
+            references.put(ensemble.getEnsembleID(), new EnsembleReference(ensemble, referenceQueue));
+        }
+        return ensemble;
+    }
+
+    private void purgeReferences()
+    {
+        EnsembleReference reference;
+        while (Objects.nonNull(reference = (EnsembleReference) referenceQueue.poll()))
+        {
+            references.remove(reference.ensembleId, reference);
+        }
+    }
+
+    private Shard shardOf(String ensembleId)
+    {
+        return shards.get(Math.floorMod(ensembleId.hashCode(), shards.size()));
+    }
+
+    /**
+     * Runs an operation on all the shards in parallel.
+     *
+     * @return The results, in the order of the shards.
+     */
+    private <T> List<T> scatter(Function<Shard, T> operation)
+    {
+        var futures = new ArrayList<Future<T>>();
+        for (var shard : shards)
+        {
+            futures.add(executor.submit(() -> operation.apply(shard)));
+        }
+
+        var results = new ArrayList<T>();
+        try
+        {
+            for (var future : futures) { results.add(future.get()); }
+        }
+        catch (ExecutionException ex)
+        {
+            // The operations only throw unchecked exceptions
+            if (ex.getCause() instanceof Error error) { throw error; }
+            throw (RuntimeException) ex.getCause();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException("Interrupted while waiting for the shards",
+                    new InterruptedIOException(ex.getMessage()));
+        }
+
+        return results;
+    }
+
+    /**
+     * Starts a local worker process, which exits with this process.
+     *
+     * @return The port the worker listens on.
+     */
+    private int startWorker(List<String> workerArgs) throws IOException
+    {
+        var command = new ArrayList<String>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.add("-classpath");
+        command.add(System.getProperty("java.class.path"));
+        command.add("Assignment");
+        command.add("--shard=0");
+        command.add("--shard-owner=" + ProcessHandle.current().pid());
+        command.addAll(workerArgs);
+
+        var worker = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        workers.add(worker);
+
+        var reader = new BufferedReader(new InputStreamReader(worker.getInputStream()));
+        var line = reader.readLine();
+        var matcher = LISTENING.matcher(String.valueOf(line));
+        if (!matcher.matches()) { throw new IOException("Failed to start a shard worker"); }
+
+        // Whatever else the worker prints is discarded, so that it never blocks on a full pipe
+        Thread.ofVirtual().start(() ->
+        {
+            try (reader)
+            {
+                reader.transferTo(Writer.nullWriter());
+            }
+            catch (IOException ex)
+            {
+                // The worker is gone
+            }
+        });
+
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    /**
+     * The summary of an ensemble received from a shard.
+     */
+    private record Summary(String getEnsembleID, EnsembleType getType, String getName) implements EnsembleSummary {}
+
+    /**
+     * A connection to a shard, carrying one request at a time but the changes, which are pipelined.
+     */
+    private final class Shard
+    {
+        private final String address;
+        private final Socket socket;
+        private final DataInputStream input;
+        private final DataOutputStream output;
+        /** The number of changes and commits sent without reading their responses. */
+        private int pendingCount = 0;
+        /** Whether the shard has been changed since the last commit. */
+        private boolean isCommitPending = false;
+        /** The first change the shard failed to apply since the last commit, reported by {@link #awaitCommit()}. */
+        private UncheckedIOException changeFailure = null;
+
+        Shard(String host, int port) throws IOException
+        {
+            address = host + ":" + port;
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        synchronized Ensemble get(String ensembleId)
+        {
+            try
+            {
+                receivePending();
+                output.writeByte(ShardServer.GET);
+                output.writeUTF(ensembleId);
+                receive();
+                return input.readBoolean() ? EnsembleCodec.read(input, ensembleRegistry) : null;
+            }
+            catch (IOException ex)
+            {
+                throw failed(ex);
+            }
+        }
+
+        synchronized boolean contains(String ensembleId)
+        {
+            try
+            {
+                receivePending();
+                output.writeByte(ShardServer.CONTAINS);
+                output.writeUTF(ensembleId);
+                receive();
+                return input.readBoolean();
+            }
+            catch (IOException ex)
+            {
+                throw failed(ex);
+            }
+        }
+
+        synchronized void put(Ensemble ensemble)
+        {
+            try
+            {
+                receivePending();
+                output.writeByte(ShardServer.PUT);
+                EnsembleCodec.write(output, ensemble);
+                receive();
+                isCommitPending = true;
+            }
+            catch (IOException ex)
+            {
+                throw failed(ex);
+            }
+        }
+
+        synchronized void remove(String ensembleId)
+        {
+            try
+            {
+                receivePending();
+                output.writeByte(ShardServer.REMOVE);
+                output.writeUTF(ensembleId);
+                receive();
+                isCommitPending = true;
+            }
+            catch (IOException ex)
+            {
+                throw failed(ex);
+            }
+        }
+
+        /**
+         * Queues a change, to be sent by {@link #commit(long)} or the next request.
+         */
+        synchronized void change(Change change)
+        {
+            try
+            {
+                if (pendingCount == MAX_PENDING_CHANGES) { receivePending(); }
+                output.writeByte(ShardServer.CHANGE);
+                output.writeUTF(change.encode());
+                pendingCount++;
+                isCommitPending = true;
+            }
+            catch (IOException ex)
+            {
+                throw failed(ex);
+            }
+        }
+
+        /**
+         * Sends the changes queued followed by their commit, if the shard has been changed, without waiting for their
+         * responses.
+         */
+        synchronized void commit(long timestamp)
+        {
+            if (!isCommitPending) { return; }
+
+            try
+            {
+                if (pendingCount == MAX_PENDING_CHANGES) { receivePending(); }
+                output.writeByte(ShardServer.COMMIT);
+                output.writeLong(timestamp);
+                pendingCount++;
+                isCommitPending = false;
+                output.flush();
+            }
+            catch (IOException ex)
+            {
+                throw failed(ex);
+            }
+        }
+
+        /**
+         * Receives the responses to the changes and the commit sent.
+         *
+         * @throws UncheckedIOException If the shard failed to apply any of them, with the first failure.
+         */
+        synchronized void awaitCommit()
+        {
+            try
+            {
+                receivePending();
+            }
+            catch (IOException ex)
+            {
+                throw failed(ex);
+            }
+
+            var failure = changeFailure;
+            changeFailure = null;
+            if (Objects.nonNull(failure)) { throw failure; }
+        }
+
+        synchronized List<Ensemble> values()
+        {
+            try
+            {
+                receivePending();
+                output.writeByte(ShardServer.VALUES);
+                receive();
+                var count = input.readInt();
+                var ensembles = new ArrayList<Ensemble>(count);
+                for (var i = 0; i < count; i++)
+                {
+                    ensembles.add(EnsembleCodec.read(input, ensembleRegistry));
+                }
+                return ensembles;
+            }
+            catch (IOException ex)
+            {
+                throw failed(ex);
+            }
+        }
+
+        synchronized int count()
+        {
+            try
+            {
+                receivePending();
+                output.writeByte(ShardServer.COUNT);
+                receive();
+                return input.readInt();
+            }
+            catch (IOException ex)
+            {
+                throw failed(ex);
+            }
+        }
+
+        synchronized List<Summary> summaries()
+        {
+            try
+            {
+                receivePending();
+                output.writeByte(ShardServer.SUMMARIES);
+                receive();
+                var count = input.readInt();
+                var summaries = new ArrayList<Summary>(count);
+                for (var i = 0; i < count; i++)
+                {
+                    summaries.add(new Summary(input.readUTF(), ensembleRegistry.get(input.readUTF()), input.readUTF()));
+                }
+                return summaries;
+            }
+            catch (IOException ex)
+            {
+                throw failed(ex);
+            }
+        }
+
+        synchronized void close()
+        {
+            try
+            {
+                // The changes queued still reach the shard
+                receivePending();
+            }
+            catch (IOException | RuntimeException ex)
+            {
+                // Closing anyway
+            }
+
+            try
+            {
+                socket.close();
+            }
+            catch (IOException ex)
+            {
+                // Closing anyway
+            }
+        }
+
+        /**
+         * Sends the request and receives the success flag of the response.
+         *
+         * @throws UncheckedIOException If the shard failed to serve the request.
+         */
+        private void receive() throws IOException
+        {
+            output.flush();
+            if (!input.readBoolean()) { throw rejected(input.readUTF()); }
+        }
+
+        /**
+         * Sends the changes queued and receives all their responses, before the next request. A change failed is kept
+         * to be reported by {@link #awaitCommit()}, rather than failing the request that happens to follow it.
+         */
+        private void receivePending() throws IOException
+        {
+            if (pendingCount == 0) { return; }
+
+            output.flush();
+            for (; pendingCount > 0; pendingCount--)
+            {
+                if (!input.readBoolean())
+                {
+                    var failure = rejected(input.readUTF());
+                    if (Objects.isNull(changeFailure)) { changeFailure = failure; }
+                }
+            }
+        }
+
+        private UncheckedIOException rejected(String message)
+        {
+            return new UncheckedIOException(String.format("Shard %s failed", address), new IOException(message));
+        }
+
+        private UncheckedIOException failed(IOException ex)
+        {
+            return new UncheckedIOException(String.format("Shard %s is unavailable", socket.getRemoteSocketAddress()), ex);
+        }
+    }
+
+    private static final class EnsembleReference extends WeakReference<Ensemble>
+    {
+        private final String ensembleId;
+
+        EnsembleReference(Ensemble ensemble, ReferenceQueue<Ensemble> queue)
+        {
+            super(ensemble, queue);
+            ensembleId = ensemble.getEnsembleID();
+        }
+    }
+}